@@ -0,0 +1,84 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+
+package com.maxeler.brainnetwork.gui;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+//Painting one frame of an image loop with N edges, offscreen
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+
+	//Image side (square images)
+	@Param({"348", "1024"})
+	public int side;
+
+	//Number of edges drawn
+	@Param({"0", "1000", "10000", "100000"})
+	public int edges;
+
+	private ImageLoop loop = null;
+	private BufferedImage target = null;
+	private Graphics2D graphics = null;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException{
+
+		//Component painting the first frame of a short sequence
+		BrainNetwork.frame = 0;
+		loop = new ImageLoop(SyntheticRecording.cube(side, side, 2, 1));
+		loop.setSize(side, side);
+
+		//Random edges between pixels of the image
+		Random random = new Random(2);
+		EdgeBuffer buffer = new EdgeBuffer(edges);
+		for (int e=0; e<edges; ++e)
+			buffer.add(random.nextInt(side*side), random.nextInt(side*side), random.nextFloat()*2-1);
+		loop.setEdges(buffer);
+
+		target = new BufferedImage(side, side, BufferedImage.TYPE_INT_RGB);
+		graphics = target.createGraphics();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown(){
+		graphics.dispose();
+	}
+
+	@Benchmark
+	public BufferedImage paint(){
+
+		loop.paintComponent(graphics);
+		return target;
+	}
+}
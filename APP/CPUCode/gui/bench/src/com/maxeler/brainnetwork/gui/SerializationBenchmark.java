@@ -0,0 +1,90 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+
+package com.maxeler.brainnetwork.gui;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//Frames exchanged with the daemon: encoding the active points and decoding the edges
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+	//Number of active points
+	@Param({"1000", "10000"})
+	public int size;
+
+	//Length of the temporal series
+	@Param({"30", "120"})
+	public int window;
+
+	//Number of edges in the response
+	@Param({"1000", "100000", "1000000"})
+	public int edges;
+
+	private ActivePoints points = null;
+	private ByteBuffer request = ByteBuffer.allocate(64*1024).order(ByteOrder.LITTLE_ENDIAN);
+	private ByteBuffer response = null;
+	private EdgeBuffer decoded = new EdgeBuffer();
+
+	@Setup(Level.Trial)
+	public void setup(){
+
+		points = SyntheticRecording.points(size, window, 1);
+
+		//Response payload as sent by the daemon: number of edges, edges and running time
+		Random random = new Random(2);
+		response = ByteBuffer.allocate(4+12*edges+8).order(ByteOrder.LITTLE_ENDIAN);
+		response.putInt(edges);
+		for (int e=0; e<edges; ++e){
+			response.putInt(random.nextInt(size));
+			response.putInt(random.nextInt(size));
+			response.putFloat(random.nextFloat()*2-1);
+		}
+		response.putDouble(0.1);
+	}
+
+	@Benchmark
+	public ByteBuffer encodePoints(){
+
+		request = DaemonCorrelationEngine.encode(request, points, 0.78f, 0);
+		return request;
+	}
+
+	@Benchmark
+	public EdgeBuffer decodeEdges(){
+
+		response.clear();
+		int count = response.getInt();
+		decoded.clear();
+		decoded.append(response, count);
+		return decoded;
+	}
+}
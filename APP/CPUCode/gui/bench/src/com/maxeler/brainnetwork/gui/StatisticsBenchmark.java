@@ -0,0 +1,79 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+
+package com.maxeler.brainnetwork.gui;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//Running statistics of the pixels: sliding by one frame and selecting the active points
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatisticsBenchmark {
+
+	//Storage of the sequence
+	@Param({"cube", "store"})
+	public String source_kind;
+
+	//Image side (square images)
+	@Param({"348", "1024"})
+	public int side;
+
+	//Length of the temporal series
+	@Param({"30", "120"})
+	public int window;
+
+	//Standard deviation threshold of the active points
+	@Param({"2.0", "4.5"})
+	public float threshold;
+
+	private FrameSource source = null;
+	private WindowStatistics statistics = null;
+	private ActivePoints points = null;
+	private int frame = 0;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException{
+
+		source = SyntheticRecording.source(source_kind, side, side, 2*window, 1);
+		statistics = new WindowStatistics(source, window, 0);
+		points = new ActivePoints(window, 1024);
+	}
+
+	@Benchmark
+	public WindowStatistics advance(){
+
+		frame = source.wrap(frame+1);
+		statistics.advance(frame);
+		return statistics;
+	}
+
+	@Benchmark
+	public int select(){
+		return statistics.select(threshold, points)+points.size;
+	}
+}
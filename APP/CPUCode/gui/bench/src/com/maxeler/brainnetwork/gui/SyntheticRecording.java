@@ -0,0 +1,116 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+
+package com.maxeler.brainnetwork.gui;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+//Reproducible image sequences for the benchmarks: noisy background with a few blinking regions
+public class SyntheticRecording {
+
+	//Decoded frames, [frame][pixel]
+	public static List<byte []> frames(int width, int height, int frames, long seed){
+
+		Random random = new Random(seed);
+
+		//Regions blinking with a random phase, so that their pixels are correlated
+		int regions = 16;
+		int [] x = new int [regions], y = new int [regions], phase = new int [regions];
+		for (int r=0; r<regions; ++r){
+			x[r] = random.nextInt(width);
+			y[r] = random.nextInt(height);
+			phase[r] = random.nextInt(frames);
+		}
+
+		List<byte []> decoded = new ArrayList<byte []>(frames);
+		for (int f=0; f<frames; ++f){
+			byte [] values = new byte [width*height];
+			for (int p=0; p<values.length; ++p)
+				values[p] = (byte)(40+random.nextInt(8));
+			for (int r=0; r<regions; ++r){
+				int level = (f+phase[r])%20<5 ? 120 : 0;
+				for (int dy=-4; dy<=4; ++dy)
+					for (int dx=-4; dx<=4; ++dx){
+						int px = x[r]+dx, py = y[r]+dy;
+						if (px>=0 && px<width && py>=0 && py<height)
+							values[py*width+px] += (byte)(level+random.nextInt(16));
+					}
+			}
+			decoded.add(values);
+		}
+		return decoded;
+	}
+
+	//Sequence stored on the heap
+	public static FrameCube cube(int width, int height, int frames, long seed){
+		return new FrameCube(frames(width, height, frames, seed), width, height);
+	}
+
+	//Sequence written to a temporary frame store (deleted at exit) and mapped
+	public static MappedFrameStore store(int width, int height, int frames, long seed) throws IOException{
+
+		File file = File.createTempFile("frames", ".bin");
+		file.deleteOnExit();
+		RandomAccessFile store = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = store.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(MappedFrameStore.header_size).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MappedFrameStore.magic);
+			header.putInt(MappedFrameStore.version);
+			header.putInt(width);
+			header.putInt(height);
+			header.putInt(frames);
+			header.clear();
+			while (header.hasRemaining())
+				channel.write(header);
+			for (byte [] values : frames(width, height, frames, seed)){
+				ByteBuffer buffer = ByteBuffer.wrap(values);
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+			}
+		} finally {
+			store.close();
+		}
+		return MappedFrameStore.open(file.getPath());
+	}
+
+	//Source of the given kind ("cube" or "store")
+	public static FrameSource source(String kind, int width, int height, int frames, long seed) throws IOException{
+		return kind.equals("store") ? store(width, height, frames, seed) : cube(width, height, frames, seed);
+	}
+
+	//Active points with random temporal series and consistent statistics
+	public static ActivePoints points(int size, int window, long seed){
+
+		Random random = new Random(seed);
+		ActivePoints points = new ActivePoints(window, size);
+		for (int k=0; k<size; ++k){
+			points.add(k, 0, 0);
+			long sum = 0, sum_squares = 0;
+			for (int i=0; i<window; ++i){
+				int value = random.nextInt(256);
+				points.series[k*window+i] = (byte)value;
+				sum += value;
+				sum_squares += value*value;
+			}
+			points.average[k] = (float)sum/window;
+			points.standard_deviation[k] = (float)Math.sqrt((double)(window*sum_squares-sum*sum)/((long)window*window));
+		}
+		return points;
+	}
+}
@@ -0,0 +1,80 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+
+package com.maxeler.brainnetwork.gui;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//Copy of the temporal series of the active points from the image sequence (one window per computation)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WindowExtractionBenchmark {
+
+	//Storage of the sequence
+	@Param({"cube", "store"})
+	public String source_kind;
+
+	//Image side (square images)
+	@Param({"348", "1024"})
+	public int side;
+
+	//Length of the temporal series
+	@Param({"30", "120"})
+	public int window;
+
+	//Fraction of the pixels that are active
+	@Param({"0.01", "0.1"})
+	public double active;
+
+	private FrameSource source = null;
+	private ActivePoints points = null;
+	private int frame = 0;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException{
+
+		source = SyntheticRecording.source(source_kind, side, side, 2*window, 1);
+
+		//Active points spread uniformly over the image
+		int pixels = side*side;
+		int size = (int)(pixels*active);
+		points = new ActivePoints(window, size);
+		for (int k=0; k<size; ++k)
+			points.add((int)((long)k*pixels/size), 0, 1);
+	}
+
+	@Benchmark
+	public byte [] readWindows(){
+
+		//Alternate between a contiguous window and one wrapping around the first frame
+		frame = frame==0 ? source.frames-1 : 0;
+		for (int k=0; k<points.size; ++k)
+			source.readWindow(points.point[k], frame, window, points.series, k*window);
+		return points.series;
+	}
+}
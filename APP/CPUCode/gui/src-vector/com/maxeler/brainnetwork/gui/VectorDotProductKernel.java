@@ -0,0 +1,83 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+package com.maxeler.brainnetwork.gui;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorSpecies;
+
+//Dot products with the JDK vector API (jdk.incubator.vector), several columns per instruction
+//The columns are transposed once into [k][column] integers, then each row broadcasts its k-th value
+//against a whole vector of columns (bytes are widened to integers, as u8*u8 does not fit a signed short)
+public class VectorDotProductKernel extends DotProductKernel {
+
+	//Widest integer vectors of the machine (8 lanes with AVX2, 16 with AVX-512)
+	private static final VectorSpecies<Integer> species = IntVector.SPECIES_PREFERRED;
+	private static final int lanes = species.length();
+
+	//Transposed columns, value k of column j in [k*stride+j-first], padded with zeros up to a multiple of lanes
+	private int [] transposed = new int [0];
+	private int stride = 0;
+
+	@Override
+	public void setColumns(byte [] series, int window, int first, int last){
+
+		super.setColumns(series, window, first, last);
+
+		//Pad to whole vectors
+		int columns = last-first;
+		stride = (columns+lanes-1)/lanes*lanes;
+		if (transposed.length<window*stride)
+			transposed = new int [window*stride];
+		if (dot.length<stride)
+			dot = new int [stride];
+
+		//Transpose
+		for (int j=first; j<last; ++j){
+			int offset = j*window;
+			for (int k=0; k<window; ++k)
+				transposed[k*stride+j-first] = series[offset+k] & 0xff;
+		}
+		for (int k=0; k<window; ++k)
+			for (int j=columns; j<stride; ++j)
+				transposed[k*stride+j] = 0;
+	}
+
+	@Override
+	public int [] dot(int a){
+
+		int offset_a = a*window;
+
+		//Two vectors of columns at a time, to hide the latency of the additions
+		int j = 0;
+		for (; j+2*lanes<=stride; j+=2*lanes){
+			IntVector sum0 = IntVector.zero(species);
+			IntVector sum1 = IntVector.zero(species);
+			for (int k=0, row=j; k<window; ++k, row+=stride){
+				int value = series[offset_a+k] & 0xff;
+				sum0 = IntVector.fromArray(species, transposed, row).mul(value).add(sum0);
+				sum1 = IntVector.fromArray(species, transposed, row+lanes).mul(value).add(sum1);
+			}
+			sum0.intoArray(dot, j);
+			sum1.intoArray(dot, j+lanes);
+		}
+		for (; j<stride; j+=lanes){
+			IntVector sum = IntVector.zero(species);
+			for (int k=0, row=j; k<window; ++k, row+=stride)
+				sum = IntVector.fromArray(species, transposed, row).mul(series[offset_a+k] & 0xff).add(sum);
+			sum.intoArray(dot, j);
+		}
+		return dot;
+	}
+
+	@Override
+	public String getName(){
+		return "vector"+lanes*32;
+	}
+}
@@ -0,0 +1,77 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+
+package com.maxeler.brainnetwork.gui;
+
+import java.util.Arrays;
+
+//Columnar store of the active points (pixels) of one frame, reused across computations
+public class ActivePoints {
+
+	//Length of the temporal series
+	public int window = 0;
+
+	//Number of active points
+	public int size = 0;
+
+	//Window the points were selected from: frame it ends at, and sequence number of the window since the statistics started
+	public int frame = 0;
+	public long sequence = 0;
+
+	//Pixel (x,y) of each point described as a 1D point identifier
+	public int [] point = null;
+
+	//Average and standard deviation of each temporal series
+	public float [] average = null;
+	public float [] standard_deviation = null;
+
+	//Temporal series stored contiguously, point k in [k*window,(k+1)*window)
+	public byte [] series = null;
+
+	//Constructor
+	public ActivePoints(int window, int capacity){
+
+		this.window = window;
+		point = new int [capacity];
+		average = new float [capacity];
+		standard_deviation = new float [capacity];
+		series = new byte [capacity*window];
+	}
+
+	//Remove all the points, keeping the allocated memory
+	public void clear(){
+		size = 0;
+	}
+
+	//Grow the arrays (doubling) in order to store at least the given number of points
+	public void ensureCapacity(int capacity){
+
+		//Already large enough
+		if (capacity<=point.length)
+			return;
+
+		//Double the size to amortize the copies
+		int new_capacity = Math.max(capacity, 2*point.length);
+		point = Arrays.copyOf(point, new_capacity);
+		average = Arrays.copyOf(average, new_capacity);
+		standard_deviation = Arrays.copyOf(standard_deviation, new_capacity);
+		series = Arrays.copyOf(series, new_capacity*window);
+	}
+
+	//Append a point, its temporal series is written afterwards in [size*window,(size+1)*window)
+	public void add(int id, float average, float standard_deviation){
+
+		ensureCapacity(size+1);
+		point[size] = id;
+		this.average[size] = average;
+		this.standard_deviation[size] = standard_deviation;
+		++size;
+	}
+}
@@ -0,0 +1,369 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+
+package com.maxeler.brainnetwork.gui;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+//Headless tool correlating every window of a recording and writing the edges of each frame to a file
+//The running statistics slide on the calling thread, the windows are correlated on a pool of engines and written in order
+public class BatchCorrelation {
+
+	//Active points of one window and the edges found
+	static class Window{
+		int frame = 0;
+		ActivePoints points = null;
+		EdgeBuffer edges = new EdgeBuffer();
+		double seconds = 0;
+	}
+
+	//Options
+	private String engine_name = CorrelationEngines.java;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private float point_threshold = 4.5f;
+	private float edge_threshold = 0.78f;
+	private PairFilter filter = null;
+	private int edge_limit = 0;
+
+	//Source of blocks of pixels, if binned, to write the edges between the centers of the blocks
+	private BinnedFrameSource binned = null;
+
+	//Totals for the final report
+	private long windows = 0;
+	private long edges = 0;
+	private double engine_seconds = 0;
+
+	//Pairs examined and skipped, for the engines that prune
+	private long pairs = 0;
+	private long pruned_pairs = 0;
+
+	//Pairs updated from the previous window and computed in full, for the incremental engine
+	private long updated_pairs = 0;
+	private long recomputed_pairs = 0;
+
+	//Engines not in use and pool of threads using them
+	private BlockingQueue<CorrelationEngine> engines = null;
+	private ExecutorService workers = null;
+
+	//Number of windows correlated at the same time
+	private int parallel = 1;
+
+	//Constructor
+	public BatchCorrelation(String engine_name, int threads, float point_threshold, float edge_threshold){
+
+		this.engine_name = engine_name;
+		this.threads = threads;
+		this.point_threshold = point_threshold;
+		this.edge_threshold = edge_threshold;
+	}
+
+	//Correlate only the pairs passing the filter (java engines only)
+	public void setFilter(PairFilter filter){
+		this.filter = filter;
+	}
+
+	//Keep only the strongest edges of each frame (0 for all the active edges)
+	public void setEdgeLimit(int edge_limit){
+		this.edge_limit = edge_limit;
+	}
+
+	//Create the engines: one single-threaded engine per window in parallel, otherwise one engine using all the threads
+	private void createEngines(){
+
+		parallel = CorrelationEngines.concurrent(engine_name) ? threads : 1;
+		engines = new ArrayBlockingQueue<CorrelationEngine>(parallel);
+		for (int i=0; i<parallel; ++i){
+			CorrelationEngine engine = CorrelationEngines.create(engine_name, parallel==1 ? threads : 1);
+			if (filter!=null)
+				((JavaCorrelationEngine)engine).setFilter(filter);
+			engines.add(engine);
+		}
+		workers = Executors.newFixedThreadPool(parallel);
+	}
+
+	//Release engines and threads
+	private void shutdown(){
+
+		workers.shutdown();
+		for (CorrelationEngine engine : engines){
+			if (engine instanceof PruningCorrelationEngine){
+				pairs += ((PruningCorrelationEngine)engine).getPairs();
+				pruned_pairs += ((PruningCorrelationEngine)engine).getPrunedPairs();
+			}
+			if (engine instanceof IncrementalCorrelationEngine){
+				updated_pairs += ((IncrementalCorrelationEngine)engine).getUpdatedPairs();
+				recomputed_pairs += ((IncrementalCorrelationEngine)engine).getRecomputedPairs();
+			}
+			engine.shutdown();
+		}
+	}
+
+	//Correlate a window on the first free engine
+	private Future<Window> submit(final Window w){
+
+		return workers.submit(new Callable<Window>(){
+			@Override
+			public Window call() throws Exception{
+				CorrelationEngine engine = engines.take();
+				try {
+					w.edges.clear();
+					w.seconds = engine.correlate(w.points, edge_threshold, w.edges);
+					return w;
+				} finally {
+					engines.put(engine);
+				}
+			}
+		});
+	}
+
+	//Write the edges of a window as lines frame,point_a,point_b,correlation
+	private void write(Window w, Writer out) throws IOException{
+
+		EdgeBuffer e = w.edges;
+		if (binned!=null)
+			binned.toPixels(e);
+		for (int i=0; i<e.size; ++i){
+			out.write(Integer.toString(w.frame));
+			out.write(',');
+			out.write(Integer.toString(e.point_a[i]));
+			out.write(',');
+			out.write(Integer.toString(e.point_b[i]));
+			out.write(',');
+			out.write(Float.toString(e.correlation[i]));
+			out.write('\n');
+		}
+
+		//Update totals
+		++windows;
+		edges += e.size;
+		engine_seconds += w.seconds;
+	}
+
+	//Wait for the oldest window in progress and write it, return it for reuse
+	private Window complete(ArrayDeque<Future<Window>> pending, Writer out) throws IOException, InterruptedException{
+
+		try {
+			Window w = pending.removeFirst().get();
+			write(w, out);
+			return w;
+		} catch (ExecutionException e){
+			throw new IOException("Correlation failed", e.getCause());
+		}
+	}
+
+	//Correlate the windows ending at frames [first,last) of the source, writing the edges to out
+	public void run(FrameSource source, int window, int first, int last, Writer out) throws IOException, InterruptedException{
+
+		binned = source instanceof BinnedFrameSource ? (BinnedFrameSource)source : null;
+		createEngines();
+		try {
+
+			//Windows recycled once written, enough to keep all the engines busy while the oldest one is written
+			ArrayDeque<Window> free = new ArrayDeque<Window>();
+			for (int i=0; i<2*parallel; ++i){
+				Window w = new Window();
+				w.points = new ActivePoints(window, 1024);
+				w.edges.setLimit(edge_limit);
+				free.add(w);
+			}
+			ArrayDeque<Future<Window>> pending = new ArrayDeque<Future<Window>>();
+
+			//Slide the statistics over the recording
+			WindowStatistics statistics = new WindowStatistics(source, window, first);
+			for (int frame=first; frame<last; ++frame){
+
+				if (frame>first)
+					statistics.advance(frame);
+
+				//Take a free window, waiting for the oldest one in progress if necessary
+				Window w = free.isEmpty() ? complete(pending, out) : free.removeFirst();
+
+				//Select the active points and copy their temporal series
+				ActivePoints points = w.points;
+				w.frame = statistics.select(point_threshold, points);
+				for (int k=0; k<points.size; ++k)
+					source.readWindow(points.point[k], w.frame, window, points.series, k*window);
+
+				pending.addLast(submit(w));
+			}
+
+			//Write the remaining windows
+			while (!pending.isEmpty())
+				complete(pending, out);
+		} finally {
+			shutdown();
+		}
+	}
+
+	private static void usage(){
+
+		StringBuilder names = new StringBuilder();
+		for (String name : CorrelationEngines.names)
+			names.append(names.length()==0 ? "" : "|").append(name);
+		System.err.println("Usage: BatchCorrelation [options] <images.zip|frames.bin> <edges.csv>");
+		System.err.println("       BatchCorrelation --verify [-t threads]   check the engines against java on synthetic windows");
+		System.err.println("  -e <engine>       "+names+" (default "+CorrelationEngines.java+")");
+		System.err.println("  -t <threads>      worker threads (default all the cores)");
+		System.err.println("  -d <deviation>    standard deviation threshold of the active points (default 4.5)");
+		System.err.println("  -c <correlation>  correlation threshold of the edges (default 0.78)");
+		System.err.println("  -x <daemon>       daemon executable, for the cpu and dfe engines");
+		System.err.println("  -l <library>      library of the daemon, for the cpu and dfe engines");
+		System.err.println("  -n <edges>        keep only the strongest edges of each frame (default all)");
+		System.err.println("  -k <bin>          correlate the averages of blocks of bin x bin pixels, edges join their centers");
+		System.err.println("  -r <x,y,w,h>      region of interest, repeat to add rectangles (java engines)");
+		System.err.println("  -m <mask.png>     region of interest from the pixels of a mask that are not black (java engines)");
+		System.err.println("  -s <pixels>       minimum distance between the points of an edge (java engines)");
+		System.err.println("  -p <all|lr>       pairs: all, or between the left and the right half of the image (java engines)");
+		System.exit(1);
+	}
+
+	public static void main(String[] args) {
+
+		//No window is ever created
+		System.setProperty("java.awt.headless", "true");
+
+		//Self-check of the engines instead of a recording
+		if (args.length>0 && args[0].equals("--verify")){
+			EngineCheck.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
+		//Read the command line
+		String engine_name = CorrelationEngines.java;
+		int threads = Runtime.getRuntime().availableProcessors();
+		float point_threshold = 4.5f;
+		float edge_threshold = 0.78f;
+		List<int []> rectangles = new ArrayList<int []>();
+		String mask_file = null;
+		double min_distance = 0;
+		boolean left_right = false;
+		int bin = 1;
+		int edge_limit = 0;
+		int i = 0;
+		try {
+			for (; i<args.length && args[i].startsWith("-"); i+=2){
+				String value = args[i+1];
+				if (args[i].equals("-e"))
+					engine_name = value;
+				else if (args[i].equals("-t"))
+					threads = Integer.parseInt(value);
+				else if (args[i].equals("-d"))
+					point_threshold = Float.parseFloat(value);
+				else if (args[i].equals("-c"))
+					edge_threshold = Float.parseFloat(value);
+				else if (args[i].equals("-x"))
+					BrainNetwork.daemon_file = value;
+				else if (args[i].equals("-l"))
+					BrainNetwork.library_file = value;
+				else if (args[i].equals("-n"))
+					edge_limit = Integer.parseInt(value);
+				else if (args[i].equals("-k"))
+					bin = Integer.parseInt(value);
+				else if (args[i].equals("-r")){
+					String [] fields = value.split(",");
+					if (fields.length!=4)
+						usage();
+					int [] rectangle = new int [4];
+					for (int k=0; k<4; ++k)
+						rectangle[k] = Integer.parseInt(fields[k].trim());
+					rectangles.add(rectangle);
+				} else if (args[i].equals("-m"))
+					mask_file = value;
+				else if (args[i].equals("-s"))
+					min_distance = Double.parseDouble(value);
+				else if (args[i].equals("-p")){
+					if (!value.equals("all") && !value.equals("lr"))
+						usage();
+					left_right = value.equals("lr");
+				}
+				else
+					usage();
+			}
+		} catch (RuntimeException e){
+			usage();
+		}
+		if (args.length-i!=2 || threads<1 || bin<1 || edge_limit<0)
+			usage();
+		if (!Arrays.asList(CorrelationEngines.names).contains(engine_name))
+			usage();
+		if (CorrelationEngines.needsDaemon(engine_name) && (BrainNetwork.daemon_file==null || BrainNetwork.library_file==null))
+			usage();
+		boolean filtered = !rectangles.isEmpty() || mask_file!=null || min_distance>0 || left_right;
+		if (filtered && !CorrelationEngines.filters(engine_name))
+			usage();
+		String image_file = args[i];
+		String output_file = args[i+1];
+
+		try {
+
+			//Load the recording, filters apply to the blocks when binned
+			BrainNetwork.loadImages(image_file);
+			FrameSource source = BrainNetwork.source;
+			if (bin>1)
+				source = new BinnedFrameSource(source, bin);
+			int window = BrainNetwork.window;
+
+			//Correlate every complete window, from the one ending at frame window-1
+			BatchCorrelation batch = new BatchCorrelation(engine_name, threads, point_threshold, edge_threshold);
+			batch.setEdgeLimit(edge_limit);
+			if (filtered){
+				PairFilter filter = new PairFilter(source.width, source.height);
+				for (int [] r : rectangles)
+					filter.addRectangle(r[0], r[1], r[2], r[3]);
+				if (mask_file!=null)
+					filter.addMask(ImageIO.read(new File(mask_file)));
+				filter.setMinDistance(min_distance);
+				filter.setLeftRight(left_right);
+				batch.setFilter(filter);
+			}
+			Writer out = new BufferedWriter(new FileWriter(output_file), 1<<20);
+			long start = System.nanoTime();
+			try {
+				out.write("frame,point_a,point_b,correlation\n");
+				batch.run(source, window, Math.min(window-1, source.frames-1), source.frames, out);
+			} finally {
+				out.close();
+			}
+			double seconds = (System.nanoTime()-start)/1e9;
+
+			//Report the throughput
+			System.out.println(String.format("%d windows, %d edges in %.3fs with %s (%d in parallel)",
+					batch.windows, batch.edges, seconds, engine_name, batch.parallel));
+			System.out.println(String.format("%.1f frames/s, %.1f edges/s, engine time %.3fs",
+					batch.windows/seconds, batch.edges/seconds, batch.engine_seconds));
+			if (batch.pairs>0)
+				System.out.println(String.format("%d of %d pairs pruned (%.1f%%)",
+						batch.pruned_pairs, batch.pairs, 100.0*batch.pruned_pairs/batch.pairs));
+			if (batch.updated_pairs+batch.recomputed_pairs>0)
+				System.out.println(String.format("%d pairs updated from the previous window, %d computed in full",
+						batch.updated_pairs, batch.recomputed_pairs));
+		} catch (Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,189 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+
+package com.maxeler.brainnetwork.gui;
+
+import java.util.BitSet;
+
+//Frames of another source averaged over blocks of bin x bin pixels (the blocks of the last row and column may be smaller)
+//Aggregate (x,y) covers the pixels (bin*x..bin*x+bin-1, bin*y..bin*y+bin-1): with bin=4 there are 16 times fewer active points
+//and 256 times fewer pairs, and the edges between aggregates can be drilled down to the pixels of the two blocks
+public class BinnedFrameSource extends FrameSource {
+
+	//Source at full resolution and side of a block
+	private final FrameSource source;
+	private final int bin;
+
+	//Frame and window buffers of each thread (the statistics, the painters and the kernels read concurrently)
+	private final ThreadLocal<int []> frame_buffer = new ThreadLocal<int []>(){
+		@Override
+		protected int [] initialValue(){
+			return new int [source.width*source.height];
+		}
+	};
+	private final ThreadLocal<int []> average_buffer = new ThreadLocal<int []>(){
+		@Override
+		protected int [] initialValue(){
+			return new int [width*height];
+		}
+	};
+	private final ThreadLocal<int []> sum_buffer = new ThreadLocal<int []>(){
+		@Override
+		protected int [] initialValue(){
+			return new int [0];
+		}
+	};
+	private final ThreadLocal<byte []> window_buffer = new ThreadLocal<byte []>(){
+		@Override
+		protected byte [] initialValue(){
+			return new byte [0];
+		}
+	};
+
+	//Constructor
+	public BinnedFrameSource(FrameSource source, int bin){
+
+		super(blocks(source.width,bin), blocks(source.height,bin), source.frames);
+		this.source = source;
+		this.bin = bin;
+	}
+
+	//Number of blocks covering a side
+	private static int blocks(int size, int bin){
+
+		if (bin<1)
+			throw new IllegalArgumentException("Bin size must be positive: "+bin);
+		return (size+bin-1)/bin;
+	}
+
+	public FrameSource getSource(){
+		return source;
+	}
+	public int getBin(){
+		return bin;
+	}
+
+	//Number of pixels of an aggregate
+	private int pixelCount(int aggregate){
+
+		int x = aggregate%width, y = aggregate/width;
+		return Math.min(bin, source.width-x*bin) * Math.min(bin, source.height-y*bin);
+	}
+
+	//Average of n values, rounded to the nearest integer
+	private static int average(int sum, int n){
+		return (sum+n/2)/n;
+	}
+
+	@Override
+	public void readFrame(int frame, int [] values){
+
+		//Sum the pixels of each block
+		int [] pixels = frame_buffer.get();
+		source.readFrame(frame, pixels);
+		for (int a=0; a<width*height; ++a)
+			values[a] = 0;
+		for (int y=0; y<source.height; ++y)
+			for (int x=0, row=(y/bin)*width; x<source.width; ++x)
+				values[row+x/bin] += pixels[y*source.width+x];
+
+		//Average them
+		for (int a=0; a<width*height; ++a)
+			values[a] = average(values[a], pixelCount(a));
+	}
+
+	@Override
+	public void readFrame(int frame, byte [] values){
+
+		int [] averages = average_buffer.get();
+		readFrame(frame, averages);
+		for (int a=0; a<width*height; ++a)
+			values[a] = (byte)averages[a];
+	}
+
+	@Override
+	public void readWindow(int aggregate, int frame, int window, byte [] series, int offset){
+
+		//Sum the windows of the pixels of the block
+		byte [] pixel_series = window_buffer.get();
+		int [] sums = sum_buffer.get();
+		if (pixel_series.length<window){
+			pixel_series = new byte [window];
+			sums = new int [window];
+			window_buffer.set(pixel_series);
+			sum_buffer.set(sums);
+		}
+		for (int i=0; i<window; ++i)
+			sums[i] = 0;
+		int x0 = (aggregate%width)*bin, y0 = (aggregate/width)*bin;
+		int x1 = Math.min(x0+bin, source.width), y1 = Math.min(y0+bin, source.height);
+		for (int y=y0; y<y1; ++y)
+			for (int x=x0; x<x1; ++x){
+				source.readWindow(y*source.width+x, frame, window, pixel_series, 0);
+				for (int i=0; i<window; ++i)
+					sums[i] += pixel_series[i] & 0xff;
+			}
+
+		//Average them, rounded like the frames
+		int n = (x1-x0)*(y1-y0);
+		for (int i=0; i<window; ++i)
+			series[offset+i] = (byte)average(sums[i], n);
+	}
+
+	//Aggregate containing a pixel of the source
+	public int aggregate(int pixel){
+		return (pixel/source.width/bin)*width + (pixel%source.width)/bin;
+	}
+
+	//Pixels of the source in an aggregate, stored in pixels (at least bin*bin long), return their number
+	public int pixels(int aggregate, int [] pixels){
+
+		int x0 = (aggregate%width)*bin, y0 = (aggregate/width)*bin;
+		int x1 = Math.min(x0+bin, source.width), y1 = Math.min(y0+bin, source.height);
+		int count = 0;
+		for (int y=y0; y<y1; ++y)
+			for (int x=x0; x<x1; ++x)
+				pixels[count++] = y*source.width+x;
+		return count;
+	}
+
+	//Pixel of the source at the center of an aggregate
+	public int center(int aggregate){
+
+		int x0 = (aggregate%width)*bin, y0 = (aggregate/width)*bin;
+		int x = (x0+Math.min(x0+bin, source.width)-1)/2;
+		int y = (y0+Math.min(y0+bin, source.height)-1)/2;
+		return y*source.width+x;
+	}
+
+	//Replace the aggregates of the edges with the pixels at their center, to draw them on the images of the source
+	public void toPixels(EdgeBuffer edges){
+
+		for (int e=0; e<edges.size; ++e){
+			edges.point_a[e] = center(edges.point_a[e]);
+			edges.point_b[e] = center(edges.point_b[e]);
+		}
+	}
+
+	//Drill down an edge between two aggregates: filter of the pairs of pixels of the source with one end in each block
+	public PairFilter drillDown(int a, int b){
+
+		int [] pixels = new int [bin*bin];
+		BitSet first = new BitSet(source.width*source.height);
+		BitSet second = new BitSet(source.width*source.height);
+		for (int i=0, n=pixels(a, pixels); i<n; ++i)
+			first.set(pixels[i]);
+		for (int i=0, n=pixels(b, pixels); i<n; ++i)
+			second.set(pixels[i]);
+		PairFilter filter = new PairFilter(source.width, source.height);
+		filter.setRegions(first, second);
+		return filter;
+	}
+}
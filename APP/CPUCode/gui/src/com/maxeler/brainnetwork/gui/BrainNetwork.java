@@ -14,36 +14,44 @@ import java.awt.Font;
 import java.awt.image.BufferedImage;
 import java.io.BufferedInputStream;
 import java.io.FileInputStream;
+import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 import javax.imageio.ImageIO;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
-import javax.swing.Timer;
 
 //GUI for brain network application
 
 public class BrainNetwork {
 
-	//Buffer to contain the sequence of brain images
-	private static BufferedImage [] images = null;
+	//Current frame (suppose 10 fps), advanced by the clock thread and read by the painters
+	public static volatile int frame = 99;
 
-	//Current frame (suppose 10 fps)
-	public static int frame = 99;
+	//Length of the temporal series (must match the window of the daemon)
+	protected static final int window = 30;
 
-	//Control linear correlation
-	public static boolean running = false;
+	//Sequence of brain images, decoded from zip or mapped from a frame store
+	protected static FrameSource source = null;
+
+	//Frames analysed: the source itself, or its averages over blocks of bin x bin pixels
+	protected static FrameSource analysis = null;
 
-	//Control daemon restarting when parameter are changed
-	public static boolean restart = false;
+	//Running statistics of each pixel over the window ending at the current frame
+	protected static WindowStatistics statistics = null;
+
+	//Control linear correlation
+	public static volatile boolean running = false;
 
 	//Get images from zip file in which are stored
 	private static void loadImagesFromZip(String zip_name){
 
-		//Temporary list
-		LinkedList<BufferedImage> image_list = new LinkedList<BufferedImage>();
+		//Temporary list of decoded frames
+		LinkedList<byte []> frame_list = new LinkedList<byte []>();
+		int width = 0, height = 0;
 
 		try{
 
@@ -52,12 +60,20 @@ public class BrainNetwork {
 			ZipInputStream zis = new ZipInputStream(new BufferedInputStream(fis));
 
 			//Read one by one the images stored in the zip
+			int [] rgb = null;
 			ZipEntry entry = zis.getNextEntry();
 			while( entry != null) {
 
-				//Get current image and save into list
+				//Get current image and keep only the analysed channel
 				BufferedImage current_image = ImageIO.read(zis);
-				image_list.add(current_image);
+				if (rgb==null){
+					width = current_image.getWidth();
+					height = current_image.getHeight();
+					rgb = new int [width*height];
+				}
+				byte [] values = new byte [width*height];
+				FrameSource.decode(current_image, rgb, values);
+				frame_list.add(values);
 
 				//Go to the next image
 				entry = zis.getNextEntry();
@@ -70,11 +86,21 @@ public class BrainNetwork {
 			System.exit(1);
 		}
 
-		//Copy list into the array
-		images = new BufferedImage[image_list.size()];
-		for (int i=0; i<image_list.size(); ++i)
-			images[i] = image_list.get(i);
+		//Store the sequence as [pixel][frame]
+		source = new FrameCube(frame_list, width, height);
+	}
+
+	//Map images from a frame store created by FrameStoreConverter, frames are read lazily
+	private static void loadImagesFromStore(String store_name){
+
+		try{
+			source = MappedFrameStore.open(store_name);
 
+		//Manage exception
+		} catch (Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
 	}
 
 
@@ -83,31 +109,50 @@ public class BrainNetwork {
 	protected static String daemon_file = null;
 	protected static String library_file = null;
 
+	//Load images from a frame store or a zip, according to the header of the file
+	static void loadImages(String image_file){
+
+		if (MappedFrameStore.isFrameStore(image_file))
+			loadImagesFromStore(image_file);
+		else
+			loadImagesFromZip(image_file);
+	}
+
 	public static void main(String[] args) {
 
+		//Headless batch mode, without any window
+		if (args.length>0 && args[0].equals("--batch")){
+			BatchCorrelation.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
 		//Get file references
 		image_file = args[0];
 		daemon_file = args[1];
 		library_file = args[2];
 
-		//Load images from file
-		loadImagesFromZip(image_file);
+		//Load images from file, optionally binned for an overview
+		loadImages(image_file);
+		analysis = source;
+		if (args.length>3 && Integer.parseInt(args[3])>1)
+			analysis = new BinnedFrameSource(source, Integer.parseInt(args[3]));
+		statistics = new WindowStatistics(analysis, window, frame);
 
 		//Create the application window
 		JFrame f = new JFrame("Brain Network");
-		f.setSize(880, 350);
+		f.setSize(880, 380);
 		f.setResizable(false);
 		f.setLocation(0,0);
 		f.getContentPane().setLayout(null);
 
 		//Create two loops of brain images
 		ImageLoop [] im = new ImageLoop[2];
-		im[0] = new ImageLoop(images);
+		im[0] = new ImageLoop(source);
 		im[0].setSize(348,260);
 		im[0].setLocation(0,4);
 		im[0].setToolTipText("Dynamic linear correlation analysis on brain images can potentially discover the underlying network of neural interactions.");
 		f.getContentPane().add(im[0]);
-		im[1] = new ImageLoop(images);
+		im[1] = new ImageLoop(source);
 		im[1].setSize(348,260);
 		im[1].setLocation(352,4);
 		im[1].setToolTipText("Dynamic linear correlation analysis on brain images can potentially discover the underlying network of neural interactions.");
@@ -183,13 +228,51 @@ public class BrainNetwork {
 		speed_up_label.setSize(100,15);
 		f.getContentPane().add(speed_up_label);
 
+		JLabel dropped_label = new JLabel("Dropped frames 0/0, computations 0/0");
+		dropped_label.setLocation(10,300);
+		dropped_label.setSize(340,15);
+		dropped_label.setToolTipText("Frames and computations skipped because the previous ones were still in progress.");
+		f.getContentPane().add(dropped_label);
+
+		//Pipeline to control brain images (10 fps by default) and computation trigger (1 Hz by default)
+		ComputationTrigger ct = new ComputationTrigger(im,l,dropped_label);
+
+		//Combo boxes to choose the playback and analysis rates
+		JLabel playback_label = new JLabel("Playback");
+		playback_label.setLocation(10,327);
+		playback_label.setSize(70,15);
+		f.getContentPane().add(playback_label);
+		RateComboBox playback_rate = new RateComboBox(ct,false);
+		playback_rate.setLocation(80,325);
+		playback_rate.setToolTipText("Frames per second of the brain images.");
+		f.getContentPane().add(playback_rate);
+		JLabel analysis_label = new JLabel("Analysis");
+		analysis_label.setLocation(200,327);
+		analysis_label.setSize(70,15);
+		f.getContentPane().add(analysis_label);
+		RateComboBox analysis_rate = new RateComboBox(ct,true);
+		analysis_rate.setLocation(265,325);
+		analysis_rate.setToolTipText("Computations per second. Max starts each computation as soon as the previous one ends, to measure the sustained throughput.");
+		f.getContentPane().add(analysis_rate);
+
+		//Combo box to draw all the active edges or only the strongest ones
+		JLabel edge_label = new JLabel("Edges");
+		edge_label.setLocation(380,327);
+		edge_label.setSize(50,15);
+		f.getContentPane().add(edge_label);
+		EdgeLimitComboBox edge_limit = new EdgeLimitComboBox(l,speed_up);
+		edge_limit.setLocation(430,325);
+		edge_limit.setToolTipText("Active edges drawn. Top K keeps only the K strongest ones of each frame, so dense frames stay readable and cheap to transfer.");
+		f.getContentPane().add(edge_limit);
+
 		//Show GUI
 		f.setVisible(true);
 
-		//Timer to control brain images (10 fps) and computation trigger
-		ComputationTrigger ct = new ComputationTrigger(im,l);
-		Timer t = new Timer(100,ct);
-		t.start();
+		//Start the pipeline
+		ct.start();
+
+		//Log the latency of the stages every 10 seconds (also available through JMX)
+		StageTimers.startLogging(10, TimeUnit.SECONDS);
 
 	}
 }
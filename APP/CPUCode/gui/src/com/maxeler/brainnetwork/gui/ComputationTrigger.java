@@ -10,61 +10,284 @@
 
 package com.maxeler.brainnetwork.gui;
 
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class ComputationTrigger implements ActionListener{
+import javax.swing.JLabel;
+import javax.swing.SwingUtilities;
 
-	//Modulo 10 counter
-	private int counter = 0;
+//Pipeline driving the demo with a fixed set of threads, each stage drops its work when the following one is still busy:
+//1. frame advance and 2. window extraction on the clock thread, 3. compute on one worker per kernel, 4. render on the event thread
+//Playback (stages 1 and 4) and analysis (stages 2 and 3) run at independent rates, which can be changed while running
+public class ComputationTrigger {
+
+	//Analysis rate that starts the next computation as soon as the previous one ends
+	public static final double as_fast_as_possible = 0;
+
+	//Default rates (10 fps, one computation per second)
+	public static final double default_playback_rate = 10;
+	public static final double default_analysis_rate = 1;
 
 	//Reference to images and linear correlation kernel
 	private ImageLoop [] loops = null;
 	private LinearCorrelation [] kernel = null;
 
+	//Label showing the dropped work
+	private JLabel status = null;
+
+	//Clock thread and one compute worker per kernel (a kernel admits one computation at a time, so one slot of queue is enough)
+	private ScheduledExecutorService clock = null;
+	private ThreadPoolExecutor [] workers = null;
+
+	//Periodic tasks on the clock, rescheduled when the rates change
+	private ScheduledFuture<?> playback = null;
+	private ScheduledFuture<?> analysis = null;
+
+	//Current rates (frames per second and computations per second)
+	private volatile double playback_rate = default_playback_rate;
+	private volatile double analysis_rate = default_analysis_rate;
+
+	//Work done and dropped since the start
+	private final AtomicLong frames = new AtomicLong();
+	private final AtomicLong dropped_frames = new AtomicLong();
+	private final AtomicLong computations = new AtomicLong();
+	private final AtomicLong dropped_computations = new AtomicLong();
+	private final AtomicLong completed_computations = new AtomicLong();
+
+	//Completed computations at the last status update, to show the sustained throughput
+	private long last_completed = 0;
+	private long last_status = 0;
+
+	//Create daemon threads with a meaningful name
+	private static ThreadFactory named(final String name){
+
+		return new ThreadFactory(){
+			@Override
+			public Thread newThread(Runnable r){
+				Thread t = new Thread(r, name);
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+	//Run a periodic task, keeping it scheduled even if it throws
+	private static Runnable periodic(final Runnable task){
+
+		return new Runnable(){
+			@Override
+			public void run(){
+				try {
+					task.run();
+				} catch (RuntimeException e){
+					e.printStackTrace();
+				}
+			}
+		};
+	}
+
 	//Constructor simply gets references to external component
-	public ComputationTrigger(ImageLoop [] loops,LinearCorrelation [] kernel){
+	public ComputationTrigger(ImageLoop [] loops, LinearCorrelation [] kernel, JLabel status){
 
 		//Linear correlation kernel
 		this.kernel = kernel;
 
-		//Image loops to update... with non-blocking mutex
+		//Image loops to update
 		this.loops = loops;
+		this.status = status;
+
+		//Threads of the pipeline, created once
+		clock = Executors.newSingleThreadScheduledExecutor(named("clock"));
+		workers = new ThreadPoolExecutor [kernel.length];
+		for (int i=0; i<kernel.length; ++i)
+			workers[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(1), named("compute-"+i));
+	}
+
+	//Start the clock
+	public synchronized void start(){
+
+		schedulePlayback();
+		scheduleAnalysis();
+		last_status = System.nanoTime();
+		clock.scheduleAtFixedRate(periodic(new Runnable(){
+			@Override
+			public void run(){
+				showStatus();
+			}
+		}), 1, 1, TimeUnit.SECONDS);
 	}
 
-	@Override
-	public void actionPerformed(ActionEvent e) {
+	//Stop all the stages
+	public synchronized void stop(){
 
-		//Increment frame with wrapping
-		++BrainNetwork.frame;
-		if (BrainNetwork.frame==loops[0].images.length)
-			BrainNetwork.frame=0;
+		clock.shutdownNow();
+		for (int i=0; i<workers.length; ++i)
+			workers[i].shutdownNow();
+	}
 
-		//When count zero, trigger computation as independent thread
-		if (counter==0  && BrainNetwork.running){
+	//Change the playback rate in frames per second
+	public synchronized void setPlaybackRate(double rate){
 
-			if (BrainNetwork.restart)
-				for (int i=0; i<kernel.length; ++i)
-					kernel[i].restart();
-			BrainNetwork.restart = false;
+		if (rate<=0)
+			throw new IllegalArgumentException("Playback rate must be positive: "+rate);
+		playback_rate = rate;
+		if (playback!=null)
+			schedulePlayback();
+	}
 
-			for (int i=0; i<kernel.length; ++i){
-				Thread t = new Thread(kernel[i]);
-				t.start();
+	//Change the analysis rate in computations per second, or as_fast_as_possible
+	public synchronized void setAnalysisRate(double rate){
+
+		if (rate<0)
+			throw new IllegalArgumentException("Analysis rate must not be negative: "+rate);
+		analysis_rate = rate;
+		if (analysis!=null)
+			scheduleAnalysis();
+	}
+
+	public double getPlaybackRate(){
+		return playback_rate;
+	}
+	public double getAnalysisRate(){
+		return analysis_rate;
+	}
+
+	//Period in microseconds of a rate in events per second
+	private static long period(double rate){
+		return Math.max(1, Math.round(1e6/rate));
+	}
+
+	//(Re)schedule the playback task at the current rate
+	private void schedulePlayback(){
+
+		if (playback!=null)
+			playback.cancel(false);
+		long period = period(playback_rate);
+		playback = clock.scheduleAtFixedRate(periodic(new Runnable(){
+			@Override
+			public void run(){
+				tick();
 			}
-		}
+		}), period, period, TimeUnit.MICROSECONDS);
+	}
 
-		//Trigger update images
+	//(Re)schedule the analysis task at the current rate
+	private void scheduleAnalysis(){
+
+		if (analysis!=null)
+			analysis.cancel(false);
+
+		//As fast as possible: each computation starts the next one, the clock only restarts idle kernels at playback rate
+		final boolean chained = analysis_rate==as_fast_as_possible;
+		long period = period(chained ? playback_rate : analysis_rate);
+		analysis = clock.scheduleAtFixedRate(periodic(new Runnable(){
+			@Override
+			public void run(){
+				if (BrainNetwork.running)
+					for (int i=0; i<kernel.length; ++i)
+						compute(i, !chained);
+			}
+		}), period, period, TimeUnit.MICROSECONDS);
+	}
+
+	//Frames drawn and dropped by the render stage
+	public long getFrames(){
+		return frames.get();
+	}
+	public long getDroppedFrames(){
+		return dropped_frames.get();
+	}
+
+	//Computations started, dropped because the kernel was still busy, and completed
+	public long getComputations(){
+		return computations.get();
+	}
+	public long getDroppedComputations(){
+		return dropped_computations.get();
+	}
+	public long getCompletedComputations(){
+		return completed_computations.get();
+	}
+
+	//Advance the demo by one frame
+	private void tick(){
+
+		//Stage 1: increment frame with wrapping and slide the running statistics by one frame
+		int frame = BrainNetwork.frame+1;
+		if (frame==BrainNetwork.source.frames)
+			frame=0;
+		BrainNetwork.statistics.advance(frame);
+		BrainNetwork.frame = frame;
+
+		//Stage 4: update images, unless the previous frame has not been painted yet
 		for (int i=0; i<loops.length; ++i){
-			Thread t = new Thread(loops[i]);
-			t.start();
+			frames.incrementAndGet();
+			if (!loops[i].render())
+				dropped_frames.incrementAndGet();
+		}
+	}
+
+	//Stages 2 and 3 for one kernel, a busy kernel counts as a dropped computation only if requested
+	private void compute(final int i, boolean count_busy){
+
+		//Stage 2: copy the windows of the active points, unless the kernel is still computing the previous ones
+		if (!kernel[i].extract()){
+			if (count_busy){
+				computations.incrementAndGet();
+				dropped_computations.incrementAndGet();
+			}
+			return;
 		}
+		computations.incrementAndGet();
+
+		//Stage 3: correlate on the worker of the kernel
+		try {
+			workers[i].execute(new Runnable(){
+				@Override
+				public void run(){
+					if (kernel[i].compute())
+						completed_computations.incrementAndGet();
 
-		//Increment counter with wrapping
-		++counter;
-		if (counter==10)
-			counter=0;
+					//As fast as possible, start the next computation right away on this worker
+					if (analysis_rate==as_fast_as_possible && BrainNetwork.running)
+						compute(i, false);
+				}
+			});
+		} catch (RejectedExecutionException e){
 
+			//Worker shut down
+			kernel[i].abandon();
+			dropped_computations.incrementAndGet();
+		}
 	}
 
+	//Update the label with the counters and the sustained throughput (on the event thread)
+	private void showStatus(){
+
+		//Computations per second since the last update
+		long now = System.nanoTime();
+		long completed = completed_computations.get();
+		double throughput = (completed-last_completed)/((now-last_status)/1e9);
+		last_completed = completed;
+		last_status = now;
+
+		if (status==null)
+			return;
+		final String text = String.format("Dropped frames %d/%d, computations %d/%d (%.1f/s)",
+				dropped_frames.get(), frames.get(), dropped_computations.get(), computations.get(), throughput);
+		SwingUtilities.invokeLater(new Runnable(){
+			@Override
+			public void run(){
+				status.setText(text);
+			}
+		});
+	}
 }
@@ -61,10 +61,10 @@ public class ComputeButton extends JToggleButton implements ActionListener, Runn
 		//Switch the running flag according to the status
 		BrainNetwork.running = isSelected();
 
-		//When stop execution, restart all the correlation kernel
+		//When stop execution, cancel all the correlation kernel
 		if (!BrainNetwork.running)
 			for (int i=0; i<kernel.length; ++i){
-				kernel[i].restart();
+				kernel[i].cancel();
 			}
 		else
 			speedup.resetToZero();
@@ -0,0 +1,33 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+
+package com.maxeler.brainnetwork.gui;
+
+import java.io.IOException;
+
+//Engine calculating the linear correlation between all the pairs of active points
+public interface CorrelationEngine {
+
+	//Correlate all the pairs of points, storing the edges above threshold, and return the running time in seconds
+	//The points are only read, the caller may reuse them for another computation
+	//Throw CancellationException if cancelled while computing
+	public double correlate(ActivePoints points, float threshold, EdgeBuffer edges) throws IOException;
+
+	//Cooperatively abort the computation in progress, its result is discarded
+	//If none is in progress, the next one is aborted as soon as it starts: the cancellation stays pending until resume()
+	public void cancel();
+
+	//Clear a pending cancellation, called by the owner of the engine before preparing the next computation
+	//(never by correlate, so a cancel arriving between the preparation and the computation is not lost)
+	public void resume();
+
+	//Release the resources of the engine before ending
+	public void shutdown();
+}
@@ -0,0 +1,62 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+
+package com.maxeler.brainnetwork.gui;
+
+//Create the correlation engines by name, for the command line tools
+public class CorrelationEngines {
+
+	//Names of the available engines (java is vectorized when the JVM supports it, scalar never is, prune skips hopeless pairs,
+	//incremental updates the pairs from the previous window)
+	public static final String java = "java";
+	public static final String scalar = "scalar";
+	public static final String gemm = "gemm";
+	public static final String prune = "prune";
+	public static final String incremental = "incremental";
+	public static final String cpu = "cpu";
+	public static final String dfe = "dfe";
+	public static final String [] names = {java, scalar, gemm, prune, incremental, cpu, dfe};
+
+	//Create an engine, threads is a hint for the engines running inside this process
+	public static CorrelationEngine create(String name, int threads){
+
+		if (name.equals(java))
+			return new JavaCorrelationEngine(threads, true);
+		if (name.equals(scalar))
+			return new JavaCorrelationEngine(threads, false);
+		if (name.equals(gemm))
+			return new GemmCorrelationEngine(threads);
+		if (name.equals(prune))
+			return new PruningCorrelationEngine(threads);
+		if (name.equals(incremental))
+			return new IncrementalCorrelationEngine(threads);
+		if (name.equals(cpu))
+			return new DaemonCorrelationEngine(false);
+		if (name.equals(dfe))
+			return new DaemonCorrelationEngine(true);
+		throw new IllegalArgumentException("Unknown engine "+name);
+	}
+
+	//Whether separate instances of the engine can correlate different windows at the same time
+	//(the daemon owns the device, the incremental engine needs the windows in order, both correlate one window at a time)
+	public static boolean concurrent(String name){
+		return name.equals(java) || name.equals(scalar) || name.equals(gemm) || name.equals(prune);
+	}
+
+	//Whether the engine can correlate only the pairs of a filter (JavaCorrelationEngine and subclasses)
+	public static boolean filters(String name){
+		return name.equals(java) || name.equals(scalar) || name.equals(prune);
+	}
+
+	//Whether the engine needs the daemon executable and library
+	public static boolean needsDaemon(String name){
+		return name.equals(cpu) || name.equals(dfe);
+	}
+}
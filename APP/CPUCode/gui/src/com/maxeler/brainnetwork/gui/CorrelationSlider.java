@@ -86,7 +86,9 @@ public class CorrelationSlider extends JSlider implements ChangeListener{
 		for (int i=0; i<kernel.length; ++i)
 			kernel[i].edge_threshold=getFloatValue();
 
-		BrainNetwork.restart = true;
+		//Stop computations using the old value, the next frame uses the new one
+		for (int i=0; i<kernel.length; ++i)
+			kernel[i].cancel();
 		speedup.resetToZero();
 	}
 
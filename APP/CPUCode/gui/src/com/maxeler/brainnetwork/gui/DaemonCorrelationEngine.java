@@ -0,0 +1,397 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+
+package com.maxeler.brainnetwork.gui;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+//Linear correlation delegated to the daemon process, running on DFE or CPU
+public class DaemonCorrelationEngine implements CorrelationEngine {
+
+	//Pipes to communicate (reads block until data arrives, without polling)
+	private OutputStream data_stream = null;
+	private WritableByteChannel data = null;
+	private ReadableByteChannel result = null;
+	private BufferedReader text = null;
+
+	// This string must match up with the c code; all very ugly, but no worse than using stderr as a comms channel!
+	private static final String err_tag = "Error!!!";
+	private static final boolean dbg = false;
+
+	//Commands sent in-band on the data pipe (must match the C code)
+	private static final int command_compute = 1;
+	private static final int command_shutdown = 2;
+	private static final int command_cancel = 3;
+
+	//Bytes of one edge in a result frame: two pixels and the correlation
+	private static final int edge_bytes = 3*4;
+
+	//Set when the result of the computation in progress is not needed anymore
+	private volatile boolean cancelled = false;
+
+	//Frames exchanged with the daemon (little endian, as the C process), reused across computations
+	private ByteBuffer request = ByteBuffer.allocate(64*1024).order(ByteOrder.LITTLE_ENDIAN);
+	private ByteBuffer response = ByteBuffer.allocate(64*1024).order(ByteOrder.LITTLE_ENDIAN);
+
+	//Get a buffer with at least the given capacity, reallocating it if necessary
+	private static ByteBuffer ensureCapacity(ByteBuffer buffer, int capacity){
+
+		if (capacity<=buffer.capacity())
+			return buffer;
+		return ByteBuffer.allocate(Math.max(capacity, 2*buffer.capacity())).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	//Encode the active-point set as a compute command, reallocating the buffer if necessary, ready to be sent
+	//The daemon returns at most limit edges (the strongest ones), or all the active edges if limit is 0
+	static ByteBuffer encode(ByteBuffer request, ActivePoints points, float threshold, int limit){
+
+		int window = points.window;
+		int length = 3*4 + points.size*(3*4+window);
+		request = ensureCapacity(request, 2*4+length);
+		request.clear();
+		request.putInt(command_compute);
+		request.putInt(length);
+		request.putInt(points.size);
+		request.putFloat(threshold);
+		request.putInt(limit);
+		for (int k=0; k<points.size; ++k){
+			request.putInt(points.point[k]);
+			request.putFloat(points.average[k]);
+			request.putFloat(points.standard_deviation[k]);
+			request.put(points.series, k*window, window);
+		}
+		request.flip();
+		return request;
+	}
+
+	//Read from the result pipe until the buffer is full
+	private void readFully(ByteBuffer buffer) throws IOException{
+
+		while (buffer.hasRemaining())
+			if (result.read(buffer)<0)
+				throw new EOFException("Daemon closed the result pipe");
+	}
+
+	//Write a whole frame on the data pipe with a single flush (commands may come from different threads)
+	private void send(ByteBuffer frame) throws IOException{
+
+		synchronized (data){
+			while (frame.hasRemaining())
+				data.write(frame);
+			data_stream.flush();
+		}
+	}
+
+	//Read a whole frame from the result pipe (length prefix, then payload), ready to be decoded
+	private void readFrame() throws IOException{
+
+		//Read the payload length
+		response.clear();
+		response.limit(4);
+		readFully(response);
+		response.flip();
+		int length = response.getInt();
+
+		//The payload holds the number of edges, the edges and the running time, reject lengths not matching it
+		//(the daemon keeps the length below 2^31, a corrupted or desynchronized pipe is not read further)
+		if (length<4+8 || (length-4-8)%edge_bytes!=0)
+			throw new IOException("Invalid result frame from daemon (payload of "+(length & 0xffffffffL)+" bytes)");
+
+		//Read the payload
+		response = ensureCapacity(response, length);
+		response.clear();
+		response.limit(length);
+		readFully(response);
+		response.flip();
+	}
+
+	//Latency of encoding, transfer (daemon computation included) and decoding, if measured
+	private LatencyHistogram encode_timer = null;
+	private LatencyHistogram transfer_timer = null;
+	private LatencyHistogram decode_timer = null;
+
+	//Measure the stages of the communication with the timers of a kernel
+	public void setTimers(StageTimers timers){
+
+		encode_timer = timers.stage(StageTimers.encode);
+		transfer_timer = timers.stage(StageTimers.transfer);
+		decode_timer = timers.stage(StageTimers.decode);
+	}
+
+	//Daemon process descriptor
+	private Process daemon = null;
+	private int daemon_pid = 0;
+
+	//Accelerate the daemon with DFE, otherwise it runs on CPU
+	protected boolean dfe;
+
+	//Kill the daemon before ending
+	class ShutDown extends Thread{
+
+		//Reference to daemon process to kill
+		private Process daemon = null;
+
+		//Pipes to shut down
+		private Closeable data = null;
+		private Closeable result = null;
+		private Closeable text = null;
+
+		//Constructor
+		public ShutDown(Process daemon, Closeable data, Closeable result, Closeable text){
+			this.daemon = daemon;
+			this.data = data;
+			this.result = result;
+			this.text = text;
+		}
+
+		//Thread simply closes pipes and kills the daemon
+		@Override
+		public void run(){
+			try {
+				if (data!=null)
+					data.close();
+				if (result!=null)
+					result.close();
+				if (text!=null)
+					text.close();
+			} catch (IOException e) {
+				// TODO Auto-generated catch block
+				e.printStackTrace();
+			}
+			daemon.destroy();
+        }
+
+	}
+
+	//Wrapper for the daemon
+	public DaemonCorrelationEngine(boolean dfe){
+
+		//Launch linear correlation daemon
+		this.dfe=dfe;
+		try {
+			launch();
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	//Launch the daemon and connect the pipes
+	private void launch() throws IOException{
+
+		ProcessBuilder daemon_builder = null;
+		if (!dfe)
+			daemon_builder = new ProcessBuilder(
+					/*"/network-raid/opt/valgrind/3.7.0/bin/valgrind",
+					"--log-file=cpu.out",*/
+					BrainNetwork.daemon_file,"-l",BrainNetwork.library_file);
+		else
+			daemon_builder = new ProcessBuilder(
+					/*"/network-raid/opt/valgrind/3.7.0/bin/valgrind",
+					"--log-file=valgrind.out",
+					"--vgdb=yes",
+					"--suppressions=/home/jbrobertson/svn/trunk/distribution/MaxCompiler/lib/slic.supp",*/
+					BrainNetwork.daemon_file,"-x","-l",BrainNetwork.library_file);
+
+		//Equivalent of calling maxldlib
+		Map<String, String> env = daemon_builder.environment();
+		String ldlib = env.get("LD_LIBRARY_PATH");
+		String maxldlib = env.get("MAXELEROSDIR")+"/lib:"+ldlib;
+		env.put("LD_LIBRARY_PATH", maxldlib);
+
+		//Lauch the daemon
+		daemon = daemon_builder.start();
+
+		//Connect pipes in order to communicate
+		data_stream = daemon.getOutputStream();
+		data = Channels.newChannel(data_stream);
+		result = Channels.newChannel(daemon.getInputStream());
+		text = new BufferedReader(new InputStreamReader(daemon.getErrorStream()));
+
+		//Register daemon to shut down at termination
+		Runtime.getRuntime().addShutdownHook(new ShutDown(daemon,data,result,text));
+
+		//Read daemon pid, blocking until the daemon is ready
+		response.clear();
+		response.limit(4);
+		readFully(response);
+		response.flip();
+		daemon_pid = response.getInt();
+		if(dbg) System.err.println("DBG>  result: daemon_pid=" + daemon_pid);
+
+		//Print message from daemon
+		checkDaemonMsg(true);
+	}
+
+	private void checkDaemonMsg(boolean echo) {
+		try {
+			for (int i=0; i<2; ++i) {
+				String line = text.readLine();
+				if (echo) System.out.println(line);
+				if (dbg)  System.err.println("DBG>  text: " + line);
+
+				// check for problems in the c process; this can happen if maxfile and device could not be initialised
+				if (line.contains(err_tag)) {     // Syphon off the error trace, inform the hapless user, and exit
+					while (text.ready()) {
+						System.err.println("\t" + text.readLine());
+					}
+					System.exit(1);
+				}
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	//Send a command without payload
+	private void sendCommand(int command) throws IOException{
+
+		ByteBuffer frame = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+		frame.putInt(command);
+		frame.flip();
+		send(frame);
+	}
+
+	@Override
+	public void cancel() {
+
+		//The daemon checks for the command while computing, a late command is ignored
+		cancelled = true;
+		try {
+			sendCommand(command_cancel);
+		} catch (IOException e) {
+			if (dbg) System.err.println("DBG>  exception in cancel: " + e.getMessage());
+		}
+	}
+
+	@Override
+	public void resume(){
+		cancelled = false;
+	}
+
+	@Override
+	public double correlate(ActivePoints points, float threshold, EdgeBuffer edges) throws IOException{
+
+		/* Any c-side errors are transmitted here via stderr; at this point we are not expecting
+		 * to receive a read acknowledgment, so check any stderr messages for errors.
+		 * (A common one here is "MaxelerOS loaded driver revision (x) differs from libmaxeleros
+		 * revision (y)", which gets lost otherwise, leaving the hapless user baffled).
+		 */
+		try {
+			if (text.ready()) {
+				String line = text.readLine();
+				if (line.contains(err_tag)) {
+					System.err.println("\t" + line);
+					while (text.ready())
+						System.err.println("\t" + text.readLine());
+					System.exit(1);
+				}
+			}
+		} catch (IOException e1) {
+			e1.printStackTrace(System.err);
+		}
+
+		//Cancelled before starting, nothing is sent (the daemon ignores the cancel command arriving while idle)
+		if (cancelled)
+			throw new CancellationException();
+
+		//Send the whole active-point set as a single frame with a single flush
+		long start = System.nanoTime();
+		request = encode(request, points, threshold, edges.getLimit());
+		long encoded = System.nanoTime();
+		send(request);
+
+		//Get reading acknowledge
+		String line = text.readLine();
+		if (dbg) System.err.println("DBG>  text(processing1): " + line);
+
+		//Now wait for results from daemon (the thread sleeps in the blocking read)
+		readFrame();
+
+		//Get writing acknowledge
+		for (int i=0; i<2; ++i) {
+			line = text.readLine();
+			if (dbg) System.err.println("DBG>  text(processing2): " + line);
+		}
+
+		//Result of a cancelled computation, the pipes are in sync again for the next one
+		if (cancelled)
+			throw new CancellationException();
+		long transferred = System.nanoTime();
+
+		//Decode all the edges straight into the packed arrays (at most the limit)
+		int n_edges = response.getInt();
+		if (4+(long)n_edges*edge_bytes+8!=response.limit())
+			throw new IOException("Invalid result frame from daemon ("+(n_edges & 0xffffffffL)+" edges in "+response.limit()+" bytes)");
+		edges.append(response, n_edges);
+		if (encode_timer!=null){
+			encode_timer.record(encoded-start);
+			transfer_timer.record(transferred-encoded);
+			decode_timer.recordSince(transferred);
+		}
+
+		//Get time
+		return response.getDouble();
+	}
+
+	//Time given to the daemon to release the device and exit by itself after the shutdown command
+	private static final long shutdown_timeout_ms = 2000;
+
+	//Wait for the daemon to exit, at most the given time, and tell whether it did
+	//(polls the exit value, Process.waitFor with a timeout is not available on Java 7)
+	private boolean waitForExit(long timeout_ms){
+
+		long deadline = System.nanoTime() + timeout_ms*1000000L;
+		while (true){
+			try {
+				daemon.exitValue();
+				return true;
+			} catch (IllegalThreadStateException e) {
+				//Still running
+			}
+			if (System.nanoTime()-deadline>=0)
+				return false;
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+	}
+
+	@Override
+	public void shutdown(){
+
+		//Ask the daemon to end, letting it unload the device and close its log
+		try {
+			sendCommand(command_shutdown);
+		} catch (IOException e) {
+			if (dbg) System.err.println("DBG>  exception in shutdown: " + e.getMessage());
+		}
+
+		//Kill it only if it does not exit in time
+		if (!waitForExit(shutdown_timeout_ms))
+			daemon.destroy();
+	}
+}
@@ -0,0 +1,104 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+package com.maxeler.brainnetwork.gui;
+
+//Integer dot products between the temporal series of one point (row) and those of a range of points (columns)
+//One instance per thread: it keeps the columns and the results between calls
+public abstract class DotProductKernel {
+
+	//Class of the vectorized kernel, compiled separately (Java 16+) and loaded only if the JVM supports it
+	private static final String vector_class = "com.maxeler.brainnetwork.gui.VectorDotProductKernel";
+
+	//Series and range of columns in use
+	protected byte [] series = null;
+	protected int window = 0;
+	protected int first = 0;
+	protected int last = 0;
+
+	//Results, dot[j-first] for column j
+	protected int [] dot = new int [0];
+
+	//Use the columns [first,last) of the series for the following calls
+	public void setColumns(byte [] series, int window, int first, int last){
+
+		this.series = series;
+		this.window = window;
+		this.first = first;
+		this.last = last;
+	}
+
+	//Dot products of point a with all the columns, the result for column j is in [j-first]
+	//Exact, as long as window*255*255 fits in an integer
+	public abstract int [] dot(int a);
+
+	//Name of the implementation
+	public abstract String getName();
+
+	//Plain loops, on any JVM
+	public static class Scalar extends DotProductKernel{
+
+		@Override
+		public int [] dot(int a){
+
+			int columns = last-first;
+			if (dot.length<columns)
+				dot = new int [columns];
+			int offset_a = a*window;
+			for (int j=first, offset_b=first*window; j<last; ++j, offset_b+=window){
+				int sum = 0;
+				for (int k=0; k<window; ++k)
+					sum += (series[offset_a+k] & 0xff) * (series[offset_b+k] & 0xff);
+				dot[j-first] = sum;
+			}
+			return dot;
+		}
+
+		@Override
+		public String getName(){
+			return "scalar";
+		}
+	}
+
+	//Whether the vectorized kernel can be used on this JVM (checked once)
+	private static Boolean vector_available = null;
+
+	//Instantiate the vectorized kernel by reflection, it is compiled separately
+	private static DotProductKernel newVector() throws ReflectiveOperationException{
+		return Class.forName(vector_class).asSubclass(DotProductKernel.class).getDeclaredConstructor().newInstance();
+	}
+
+	//Create the fastest kernel available, or the scalar one if vector is false
+	public static DotProductKernel create(boolean vector){
+
+		if (vector && isVectorAvailable()){
+			try {
+				return newVector();
+			} catch (ReflectiveOperationException | LinkageError e){
+				//Fall back to scalar
+			}
+		}
+		return new Scalar();
+	}
+
+	//The vector API is an incubator module: the class is missing on older JVMs and fails to link without --add-modules
+	public static synchronized boolean isVectorAvailable(){
+
+		if (vector_available==null){
+			try {
+				DotProductKernel kernel = newVector();
+				kernel.setColumns(new byte [1], 1, 0, 1);
+				vector_available = kernel.dot(0)[0]==0;
+			} catch (ReflectiveOperationException | LinkageError e){
+				vector_available = false;
+			}
+		}
+		return vector_available;
+	}
+}
@@ -0,0 +1,191 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+
+package com.maxeler.brainnetwork.gui;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+//Batch of correlation edges between two points (pixels), filled by an engine and then published as a whole
+//Edges are packed in parallel primitive arrays: edge e joins point_a[e] and point_b[e], iterate with e in [0,size)
+//With a limit, only the strongest edges (largest |correlation|) are kept, in a min-heap: memory stays bounded by the limit
+public class EdgeBuffer {
+
+	//Number of edges
+	public int size = 0;
+
+	//System.nanoTime when the computation producing the edges started (0 if unknown)
+	public long timestamp = 0;
+
+	//Two points and correlation of each edge
+	public int [] point_a = null;
+	public int [] point_b = null;
+	public float [] correlation = null;
+
+	//Maximum number of edges kept, 0 for all of them
+	private int limit = 0;
+
+	//Constructor
+	public EdgeBuffer(int capacity){
+
+		point_a = new int [capacity];
+		point_b = new int [capacity];
+		correlation = new float [capacity];
+	}
+
+	//Empty buffer
+	public EdgeBuffer(){
+		this(16);
+	}
+
+	//Remove all the edges, keeping the allocated memory and the limit
+	public void clear(){
+		size = 0;
+	}
+
+	//Keep only the given number of strongest edges (0 for all), set while the buffer is empty
+	public void setLimit(int limit){
+
+		if (limit<0)
+			throw new IllegalArgumentException("Limit must not be negative: "+limit);
+		if (size>0 && limit!=this.limit)
+			throw new IllegalStateException("Limit changed on a buffer with "+size+" edges");
+		this.limit = limit;
+	}
+	public int getLimit(){
+		return limit;
+	}
+
+	//Grow the arrays (doubling) in order to store at least the given number of edges
+	public void ensureCapacity(int capacity){
+
+		//Already large enough
+		if (capacity<=point_a.length)
+			return;
+
+		//Double the size to amortize the copies
+		int new_capacity = Math.max(capacity, 2*point_a.length);
+		point_a = Arrays.copyOf(point_a, new_capacity);
+		point_b = Arrays.copyOf(point_b, new_capacity);
+		correlation = Arrays.copyOf(correlation, new_capacity);
+	}
+
+	//Append an edge, or offer it to the heap of the strongest edges if limited
+	public void add(int a, int b, float correlation){
+
+		if (limit>0){
+			offer(a, b, correlation);
+			return;
+		}
+		ensureCapacity(size+1);
+		point_a[size] = a;
+		point_b[size] = b;
+		this.correlation[size] = correlation;
+		++size;
+	}
+
+	//Append all the edges of another buffer
+	public void addAll(EdgeBuffer other){
+
+		if (limit>0){
+			for (int e=0; e<other.size; ++e)
+				offer(other.point_a[e], other.point_b[e], other.correlation[e]);
+			return;
+		}
+		ensureCapacity(size+other.size);
+		System.arraycopy(other.point_a, 0, point_a, size, other.size);
+		System.arraycopy(other.point_b, 0, point_b, size, other.size);
+		System.arraycopy(other.correlation, 0, correlation, size, other.size);
+		size += other.size;
+	}
+
+	//Append the given number of edges encoded as (point a, point b, correlation) in the buffer, growing only once
+	public void append(ByteBuffer source, int count){
+
+		if (limit>0){
+			for (int e=0; e<count; ++e)
+				offer(source.getInt(), source.getInt(), source.getFloat());
+			return;
+		}
+		ensureCapacity(size+count);
+		int [] point_a = this.point_a;
+		int [] point_b = this.point_b;
+		float [] correlation = this.correlation;
+		for (int e=size, end=size+count; e<end; ++e){
+			point_a[e] = source.getInt();
+			point_b[e] = source.getInt();
+			correlation[e] = source.getFloat();
+		}
+		size += count;
+	}
+
+	//Strength of edge e
+	private float strength(int e){
+		return Math.abs(correlation[e]);
+	}
+
+	//Keep the edge if it is among the strongest ones: the weakest kept edge is at the root of the heap
+	private void offer(int a, int b, float c){
+
+		//Not full, add the edge and move it up
+		if (size<limit){
+			ensureCapacity(size+1);
+			int e = size++;
+			while (e>0){
+				int parent = (e-1)>>>1;
+				if (strength(parent)<=Math.abs(c))
+					break;
+				point_a[e] = point_a[parent];
+				point_b[e] = point_b[parent];
+				correlation[e] = correlation[parent];
+				e = parent;
+			}
+			point_a[e] = a;
+			point_b[e] = b;
+			correlation[e] = c;
+			return;
+		}
+
+		//Full, replace the weakest edge if stronger
+		if (Math.abs(c)>strength(0))
+			siftDown(0, a, b, c);
+	}
+
+	//Place an edge at position e, moving it down to restore the heap
+	private void siftDown(int e, int a, int b, float c){
+
+		float strength = Math.abs(c);
+		while (true){
+			int child = 2*e+1;
+			if (child>=size)
+				break;
+			if (child+1<size && strength(child+1)<strength(child))
+				++child;
+			if (strength<=strength(child))
+				break;
+			point_a[e] = point_a[child];
+			point_b[e] = point_b[child];
+			correlation[e] = correlation[child];
+			e = child;
+		}
+		point_a[e] = a;
+		point_b[e] = b;
+		correlation[e] = c;
+	}
+
+	//Restore the heap after the edges have been modified in place (if limited)
+	void heapify(){
+
+		if (limit==0)
+			return;
+		for (int e=size/2-1; e>=0; --e)
+			siftDown(e, point_a[e], point_b[e], correlation[e]);
+	}
+}
@@ -0,0 +1,68 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+
+package com.maxeler.brainnetwork.gui;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.JComboBox;
+
+//Combo box to draw all the active edges or only the strongest ones of each frame
+
+public class EdgeLimitComboBox extends JComboBox<String> implements ActionListener{
+
+	//UID generated for component serialization
+	private static final long serialVersionUID = -3785226603911455917L;
+
+	//Choices of maximum number of edges (0 for all)
+	private static final String [] labels = {"All", "Top 100", "Top 1000", "Top 10000"};
+	private static final int [] limits = {0, 100, 1000, 10000};
+
+	//Reference to image correlation kernel and speed-up
+	private LinearCorrelation [] kernel = null;
+	private SpeedUpTextField speedup = null;
+
+	//Constructor
+	public EdgeLimitComboBox(LinearCorrelation [] kernel, SpeedUpTextField speedup){
+
+		//Instantiate a combo box with the choices of limit
+		super(labels);
+
+		//Store external references
+		this.kernel = kernel;
+		this.speedup = speedup;
+
+		//Select the current limit of the kernels
+		for (int i=0; i<limits.length; ++i)
+			if (limits[i]==kernel[0].edge_limit)
+				setSelectedIndex(i);
+
+		//Combo size
+		setSize(100,20);
+
+		//In order to react to action on the combo box
+		addActionListener(this);
+	}
+
+	//Describe reaction
+	@Override
+	public void actionPerformed(ActionEvent e){
+
+		//Modify the limit of edges for each kernel
+		for (int i=0; i<kernel.length; ++i)
+			kernel[i].edge_limit = limits[getSelectedIndex()];
+
+		//Stop computations using the old value, the next frame uses the new one
+		for (int i=0; i<kernel.length; ++i)
+			kernel[i].cancel();
+		speedup.resetToZero();
+	}
+}
@@ -0,0 +1,657 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+
+package com.maxeler.brainnetwork.gui;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.locks.LockSupport;
+
+//Self-check of the exact engines: on a synthetic recording, each engine must find the same edges, with the same correlations,
+//as the scalar JavaCorrelationEngine. The windows slide by one and more frames, jump forward and back, and the active points
+//join and leave, then a computation is cancelled in the middle and the next one checked. The gemm engine rounds differently
+//and must stay within GemmCorrelationEngine.tolerance() of the reference, edges that close to the threshold may differ.
+//With a pair filter, the engines must find the edges of the reference that pass the filter (brute force)
+//With a limit of edges, the engines and EdgeBuffer must keep the strongest edges by |correlation| (sort and truncate)
+//Run with --batch --verify [-t threads], the exit status is 1 if any check fails
+public class EngineCheck {
+
+	//Synthetic recording: size of the images (a row of three cells of the spatial index), number of frames and length of the windows
+	private static final int width = 96;
+	private static final int height = 24;
+	private static final int frames = 160;
+	private static final int window = 30;
+
+	//Correlation threshold of the edges
+	private static final float threshold = 0.7f;
+
+	//Windows correlated in order: frame the window ends at, maximum number of points (0 for all of them) and recording
+	//Slides by one frame, by several frames, by a window and more, backwards, the same window twice, then fewer points
+	//(below and above the points tracked by the second incremental engine), then some pixels change under the engine
+	private static final int [][] sequence = {
+		{29,0,0}, {30,0,0}, {31,0,0}, {32,0,0}, {33,0,0}, {36,0,0}, {42,0,0}, {50,0,0}, {80,0,0}, {125,0,0}, {100,0,0}, {100,0,0},
+		{101,400,0}, {102,400,0}, {103,0,0}, {104,400,0}, {105,400,0}, {106,0,1}, {107,0,1}, {108,0,0}};
+
+	//Windows correlated with each pair filter
+	private static final int [] filter_frames = {29, 30, 80, 125};
+
+	//Windows correlated with each limit of edges, and the limits (the last one above the number of edges)
+	private static final int [] top_frames = {29, 30, 80};
+	private static final int [] top_limits = {1, 100, 5000, 10000000};
+
+	//First window of the cancellation check, and delays before cancelling until a computation is actually cancelled (ns)
+	private static final int cancel_frame = 130;
+	private static final long [] cancel_delays = {20000, 50000, 100000, 200000, 300000, 500000, 700000, 1000000, 1500000,
+		2000000, 3000000, 5000000, 10000000};
+
+	//Decoded frames of the recording and of a copy with some pixels changed, [recording][frame][pixel]
+	private final byte [][][] recordings;
+
+	//Pixels active at each frame
+	private final boolean [][] active;
+
+	//Engine giving the expected edges, and threads of the engines
+	private final JavaCorrelationEngine reference;
+	private final int threads;
+
+	//Expected edges of the windows already correlated by the reference, by frame and count
+	private final Map<Long,EdgeBuffer> expected = new HashMap<Long,EdgeBuffer>();
+
+	//Window cancelled by the last cancellation check, -1 if every computation ended first
+	private int cancelled_frame = -1;
+
+	//Checks run and failed
+	private int checks = 0;
+	private int failures = 0;
+
+	//Constructor
+	public EngineCheck(int threads, long seed){
+
+		this.threads = threads;
+		recordings = new byte [][][] {record(seed), record(seed)};
+		alter(recordings[1], seed+2);
+		active = activity(seed+1);
+		reference = new JavaCorrelationEngine(threads, false);
+	}
+
+	//Groups of pixels following a common signal, mostly blocks of neighbours (the strongest edges are short), some of them
+	//inverted and some exact copies of another pixel (ties between correlations), over pixels of random noise
+	private static byte [][] record(long seed){
+
+		Random random = new Random(seed);
+		int groups = 8;
+		int [][] signal = new int [groups][frames];
+		for (int g=0; g<groups; ++g)
+			for (int f=0, level=random.nextInt(256); f<frames; ++f){
+				level = Math.max(0, Math.min(255, level+random.nextInt(61)-30));
+				signal[g][f] = level;
+			}
+		byte [][] values = new byte [frames][width*height];
+		for (int p=0; p<width*height; ++p){
+			int kind = random.nextInt(8);
+			int g = random.nextInt(4)==0 ? random.nextInt(groups) : ((p%width)/16+(p/width)/12*6)%groups;
+			int copy = p>0 ? random.nextInt(p) : 0;
+			int noise = 4+random.nextInt(40);
+			for (int f=0; f<frames; ++f){
+				int value;
+				if (kind==0 && p>0)
+					value = values[f][copy] & 0xff;
+				else if (kind==1)
+					value = 255-signal[g][f]+random.nextInt(noise+1)-noise/2;
+				else if (kind<5)
+					value = signal[g][f]+random.nextInt(noise+1)-noise/2;
+				else
+					value = random.nextInt(256);
+				values[f][p] = (byte)Math.max(0, Math.min(255, value));
+			}
+		}
+		return values;
+	}
+
+	//Replace one pixel out of five with noise
+	private static void alter(byte [][] values, long seed){
+
+		Random random = new Random(seed);
+		for (int f=0; f<frames; ++f)
+			for (int p=0; p<width*height; p+=5)
+				values[f][p] = (byte)random.nextInt(256);
+	}
+
+	//A quarter of the pixels always active, the others on and off with their own period
+	private static boolean [][] activity(long seed){
+
+		Random random = new Random(seed);
+		boolean [][] active = new boolean [frames][width*height];
+		for (int p=0; p<width*height; ++p){
+			boolean always = random.nextInt(4)==0;
+			int period = 4+random.nextInt(16);
+			int on = 1+random.nextInt(period);
+			int phase = random.nextInt(period);
+			for (int f=0; f<frames; ++f)
+				active[f][p] = always || (f+phase)%period<on;
+		}
+		return active;
+	}
+
+	//Active points of the window of a recording ending at a frame, at most count of them (0 for all), in ascending order
+	private ActivePoints points(int frame, int count, int recording){
+
+		ActivePoints points = new ActivePoints(window, 1024);
+		points.frame = frame;
+		for (int p=0; p<width*height && (count==0 || points.size<count); ++p){
+			if (!active[frame][p])
+				continue;
+			int k = points.size;
+			points.add(p, 0, 0);
+			long sum = 0, sum_squares = 0;
+			for (int i=0; i<window; ++i){
+				int value = recordings[recording][frame-window+1+i][p] & 0xff;
+				points.series[k*window+i] = (byte)value;
+				sum += value;
+				sum_squares += value*value;
+			}
+			points.average[k] = (float)sum/window;
+			points.standard_deviation[k] = (float)Math.sqrt((double)(window*sum_squares-sum*sum)/((long)window*window));
+		}
+		return points;
+	}
+
+	//Edges expected for a window, correlated once
+	private EdgeBuffer expected(int frame, int count, int recording){
+
+		long key = ((long)frame<<32) | (count<<1) | recording;
+		EdgeBuffer edges = expected.get(key);
+		if (edges==null){
+			edges = new EdgeBuffer();
+			reference.correlate(points(frame, count, recording), threshold, edges);
+			expected.put(key, edges);
+		}
+		return edges;
+	}
+
+	//Edges of a buffer by pair of points, with the bits of their correlation
+	private static Map<Long,Integer> pairs(EdgeBuffer edges){
+
+		Map<Long,Integer> pairs = new HashMap<Long,Integer>(2*edges.size);
+		for (int e=0; e<edges.size; ++e)
+			pairs.put(((long)edges.point_a[e]<<32) | (edges.point_b[e] & 0xffffffffL), Float.floatToIntBits(edges.correlation[e]));
+		return pairs;
+	}
+
+	//Null if the edges found are the expected ones (same pairs in the same order, same correlations), otherwise the difference
+	static String compare(EdgeBuffer expected, EdgeBuffer found){
+
+		Map<Long,Integer> expected_pairs = pairs(expected);
+		Map<Long,Integer> found_pairs = pairs(found);
+		if (found_pairs.size()!=found.size)
+			return (found.size-found_pairs.size())+" duplicate edges";
+		int missing = 0, wrong = 0;
+		for (Map.Entry<Long,Integer> edge : expected_pairs.entrySet()){
+			Integer correlation = found_pairs.get(edge.getKey());
+			if (correlation==null)
+				++missing;
+			else if (!correlation.equals(edge.getValue()))
+				++wrong;
+		}
+		int extra = found_pairs.size()-(expected_pairs.size()-missing);
+		if (missing>0 || wrong>0 || extra>0)
+			return expected.size+" edges expected, "+missing+" missing, "+extra+" extra, "+wrong+" with another correlation";
+		return null;
+	}
+
+	//Absolute correlations of the edges, in ascending order
+	private static float [] strengths(EdgeBuffer edges){
+
+		float [] strengths = new float [edges.size];
+		for (int e=0; e<edges.size; ++e)
+			strengths[e] = Math.abs(edges.correlation[e]);
+		Arrays.sort(strengths);
+		return strengths;
+	}
+
+	//Null if the edges found are the limit strongest of all the edges (either edge of a tie), otherwise the difference
+	static String compareTop(EdgeBuffer all, EdgeBuffer found, int limit){
+
+		int count = Math.min(limit, all.size);
+		if (found.size!=count)
+			return count+" edges expected, "+found.size+" found";
+		Map<Long,Integer> all_pairs = pairs(all);
+		Map<Long,Integer> found_pairs = pairs(found);
+		if (found_pairs.size()!=found.size)
+			return (found.size-found_pairs.size())+" duplicate edges";
+		int unknown = 0;
+		for (Map.Entry<Long,Integer> edge : found_pairs.entrySet())
+			if (!edge.getValue().equals(all_pairs.get(edge.getKey())))
+				++unknown;
+		if (unknown>0)
+			return unknown+" edges not among all the edges";
+		float [] all_strengths = strengths(all);
+		float [] found_strengths = strengths(found);
+		int weaker = 0;
+		for (int e=0; e<count; ++e)
+			if (found_strengths[e]!=all_strengths[all.size-count+e])
+				++weaker;
+		if (weaker>0)
+			return weaker+" of "+count+" edges not among the strongest";
+		return null;
+	}
+
+	//Record the result of a check, with some detail if passed
+	private void report(String name, String error, String detail){
+
+		++checks;
+		if (error!=null)
+			++failures;
+		System.out.println((error==null ? "ok      " : "FAILED  ")+name+(error==null ? " ("+detail+")" : ": "+error));
+	}
+
+	//Whether two sets of active points are equal
+	private static boolean same(ActivePoints a, ActivePoints b){
+
+		return a.size==b.size && a.window==b.window && a.frame==b.frame &&
+			Arrays.equals(Arrays.copyOf(a.point, a.size), Arrays.copyOf(b.point, b.size)) &&
+			Arrays.equals(Arrays.copyOf(a.average, a.size), Arrays.copyOf(b.average, b.size)) &&
+			Arrays.equals(Arrays.copyOf(a.standard_deviation, a.size), Arrays.copyOf(b.standard_deviation, b.size)) &&
+			Arrays.equals(Arrays.copyOf(a.series, a.size*a.window), Arrays.copyOf(b.series, b.size*b.window));
+	}
+
+	//Correlate a window with the engine and compare with the expected edges, the points must be left as they are
+	private String check(CorrelationEngine engine, int frame, int count, int recording) throws IOException{
+
+		EdgeBuffer edges = new EdgeBuffer();
+		ActivePoints points = points(frame, count, recording);
+		engine.correlate(points, threshold, edges);
+		String error = compare(expected(frame, count, recording), edges);
+		if (error==null && !same(points, points(frame, count, recording)))
+			error = "points modified by the engine";
+		return error==null ? null : "window "+frame+": "+error;
+	}
+
+	//Pairs computed so far by an engine counting them, -1 otherwise
+	private static long progress(CorrelationEngine engine){
+
+		if (engine instanceof IncrementalCorrelationEngine){
+			IncrementalCorrelationEngine incremental = (IncrementalCorrelationEngine)engine;
+			return incremental.getUpdatedPairs()+incremental.getRecomputedPairs();
+		}
+		return -1;
+	}
+
+	//Cancel a window before it starts, then the computation of a window after increasing delays until one is cancelled in
+	//the middle (when the engine counts its pairs, otherwise at any time), then check the next window. The windows completed
+	//before are checked as well
+	private String checkCancel(final CorrelationEngine engine) throws IOException, InterruptedException{
+
+		//A cancel arriving before the computation starts aborts it as well, until the engine resumes
+		int frame = cancel_frame;
+		engine.cancel();
+		try {
+			engine.correlate(points(frame, 0, 0), threshold, new EdgeBuffer());
+			return "window "+frame+" computed after a cancel preceding it";
+		} catch (CancellationException e){
+		}
+
+		cancelled_frame = -1;
+		for (int d=0; d<cancel_delays.length && cancelled_frame<0; ++d, ++frame){
+			engine.resume();
+			final long delay = cancel_delays[d];
+			Thread canceller = new Thread(){
+				@Override
+				public void run(){
+					LockSupport.parkNanos(delay);
+					engine.cancel();
+				}
+			};
+			ActivePoints points = points(frame, 0, 0);
+			EdgeBuffer edges = new EdgeBuffer();
+			long before = progress(engine);
+			canceller.start();
+			try {
+				engine.correlate(points, threshold, edges);
+				String error = compare(expected(frame, 0, 0), edges);
+				if (error!=null)
+					return "window "+frame+" (not cancelled): "+error;
+			} catch (CancellationException e){
+				if (before<0 || progress(engine)>before)
+					cancelled_frame = frame;
+			}
+			canceller.join();
+		}
+		engine.resume();
+		String error = check(engine, frame, 0, 0);
+		if (error!=null)
+			return error+" (after "+(cancelled_frame>=0 ? "a cancelled computation" : "cancelling too late")+")";
+		return null;
+	}
+
+	//Correlate the whole sequence with the gemm engine, and compare with the reference within the tolerance of each pair:
+	//every edge found must be an edge of the reference (below the threshold by less than the tolerance) with a close
+	//correlation, and every edge of the reference above the threshold by more than the tolerance must be found
+	private void checkTolerance(String name, GemmCorrelationEngine engine){
+
+		String error = null;
+		float max_difference = 0;
+		try {
+			for (int w=0; w<sequence.length && error==null; ++w){
+
+				//Index of the active points by pixel, and largest tolerance
+				ActivePoints points = points(sequence[w][0], sequence[w][1], sequence[w][2]);
+				int [] index = new int [width*height];
+				float max_tolerance = 0;
+				for (int k=0; k<points.size; ++k){
+					index[points.point[k]] = k;
+					max_tolerance = Math.max(max_tolerance, GemmCorrelationEngine.tolerance(points, k, k));
+				}
+
+				//Edges of the reference down to the lowest threshold an edge found may have
+				EdgeBuffer all = new EdgeBuffer();
+				reference.correlate(points, threshold-max_tolerance, all);
+				Map<Long,Integer> all_pairs = pairs(all);
+				EdgeBuffer edges = new EdgeBuffer();
+				engine.correlate(points, threshold, edges);
+				Map<Long,Integer> found_pairs = pairs(edges);
+				if (found_pairs.size()!=edges.size){
+					error = (edges.size-found_pairs.size())+" duplicate edges";
+					break;
+				}
+
+				//Edges found
+				int extra = 0, wrong = 0;
+				for (int e=0; e<edges.size; ++e){
+					int a = edges.point_a[e], b = edges.point_b[e];
+					Integer bits = all_pairs.get(((long)Math.min(a,b)<<32) | Math.max(a,b));
+					if (bits==null){
+						++extra;
+						continue;
+					}
+					float difference = Math.abs(Float.intBitsToFloat(bits)-edges.correlation[e]);
+					max_difference = Math.max(max_difference, difference);
+					if (difference>GemmCorrelationEngine.tolerance(points, index[a], index[b]))
+						++wrong;
+				}
+
+				//Edges of the reference clearly above the threshold
+				int missing = 0;
+				for (int e=0; e<all.size; ++e){
+					int a = all.point_a[e], b = all.point_b[e];
+					float tolerance = GemmCorrelationEngine.tolerance(points, index[a], index[b]);
+					if (Math.abs(all.correlation[e])>=threshold+tolerance && !found_pairs.containsKey(((long)a<<32) | b)
+							&& !found_pairs.containsKey(((long)b<<32) | a))
+						++missing;
+				}
+				if (missing>0 || wrong>0 || extra>0)
+					error = "window "+sequence[w][0]+": "+edges.size+" edges found, "+missing+" missing, "+extra+" extra, "+
+						wrong+" beyond the tolerance";
+			}
+		} catch (RuntimeException e){
+			error = e.toString();
+		} finally {
+			engine.shutdown();
+		}
+		report(name, error, sequence.length+" windows, largest difference "+max_difference);
+	}
+
+	//Correlate the whole sequence with the engine, then cancel a computation, and shut the engine down
+	private void checkEngine(String name, CorrelationEngine engine){
+
+		String error = null;
+		try {
+			for (int w=0; w<sequence.length && error==null; ++w)
+				error = check(engine, sequence[w][0], sequence[w][1], sequence[w][2]);
+			if (error==null)
+				error = checkCancel(engine);
+		} catch (IOException | InterruptedException | RuntimeException e){
+			error = e.toString();
+		} finally {
+			engine.shutdown();
+		}
+		report(name, error, sequence.length+" windows, "+(cancelled_frame>=0 ? "window "+cancelled_frame+" cancelled" : "no window cancelled"));
+	}
+
+	//Edges of the reference passing the filter, in the same order
+	private EdgeBuffer expected(int frame, PairFilter filter){
+
+		EdgeBuffer all = expected(frame, 0, 0);
+		EdgeBuffer edges = new EdgeBuffer();
+		for (int e=0; e<all.size; ++e)
+			if (filter.accept(all.point_a[e], all.point_b[e]))
+				edges.add(all.point_a[e], all.point_b[e], all.correlation[e]);
+		return edges;
+	}
+
+	//Correlate some windows with the engine restricted by the filter, and compare with the edges of the reference passing it
+	private void checkFilter(String name, JavaCorrelationEngine engine, PairFilter filter){
+
+		String error = null;
+		int edges_found = 0;
+		engine.setFilter(filter);
+		try {
+			for (int w=0; w<filter_frames.length && error==null; ++w){
+				int frame = filter_frames[w];
+				EdgeBuffer edges = new EdgeBuffer();
+				ActivePoints points = points(frame, 0, 0);
+				engine.correlate(points, threshold, edges);
+				error = compare(expected(frame, filter), edges);
+				if (error==null && !same(points, points(frame, 0, 0)))
+					error = "points modified by the engine";
+				if (error!=null)
+					error = "window "+frame+": "+error;
+				edges_found += edges.size;
+			}
+		} catch (RuntimeException e){
+			error = e.toString();
+		}
+		report(name, error, filter_frames.length+" windows, "+edges_found+" edges");
+	}
+
+	//Filters of regions, halves, distances around the size of a cell of the spatial index, masks and pairs of regions
+	private static PairFilter [] filters(String [] names){
+
+		PairFilter [] filters = new PairFilter [names.length];
+		for (int f=0; f<filters.length; ++f)
+			filters[f] = new PairFilter(width, height);
+		filters[0].addRectangle(5, 3, 20, 15);
+		filters[0].addRectangle(30, 20, 40, 30);
+		filters[1].setLeftRight(true);
+		filters[2].setMinDistance(20);
+		filters[3].setMinDistance(35);
+		filters[4].setMinDistance(60);
+		filters[5].addRectangle(20, -4, 60, 16);
+		filters[5].setLeftRight(true);
+		filters[5].setMinDistance(15);
+		BufferedImage mask = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int y=0; y<height; ++y)
+			for (int x=0; x<width; ++x)
+				if ((x-48)*(x-48)+(y-12)*(y-12)<18*18)
+					mask.setRGB(x, y, 0xffffff);
+		filters[6].addMask(mask);
+		BitSet first = new BitSet(width*height), second = new BitSet(width*height);
+		for (int y=0; y<8; ++y){
+			first.set((4+y)*width+4, (4+y)*width+12);
+			second.set((2+y)*width+70, (2+y)*width+78);
+		}
+		filters[7].setRegions(first, second);
+		return filters;
+	}
+
+	//Random edges with few distinct correlations (ties), half of them negative, edge e joins points e and size+e
+	private static EdgeBuffer randomEdges(Random random, int size){
+
+		EdgeBuffer edges = new EdgeBuffer();
+		for (int e=0; e<size; ++e)
+			edges.add(e, size+e, (random.nextInt(21)-10)/10f);
+		return edges;
+	}
+
+	//Copy of some edges into a buffer with a limit, one by one
+	private static EdgeBuffer limited(EdgeBuffer edges, int first, int last, int limit){
+
+		EdgeBuffer copy = new EdgeBuffer();
+		copy.setLimit(limit);
+		for (int e=first; e<last; ++e)
+			copy.add(edges.point_a[e], edges.point_b[e], edges.correlation[e]);
+		return copy;
+	}
+
+	//Limited buffers filled edge by edge, merged from limited buffers, decoded from bytes and after removing edges
+	private void checkEdgeBuffer(long seed){
+
+		Random random = new Random(seed);
+		String error = null;
+		int runs = 0;
+		for (; runs<2000 && error==null; ++runs){
+			int size = random.nextInt(300);
+			int limit = 1+random.nextInt(60);
+			EdgeBuffer all = randomEdges(random, size);
+
+			//Edge by edge
+			error = compareTop(all, limited(all, 0, size, limit), limit);
+
+			//Merge of buffers limited separately, like the tiles of the engines
+			EdgeBuffer merged = new EdgeBuffer();
+			merged.setLimit(limit);
+			for (int first=0, last; first<size && error==null; first=last){
+				last = Math.min(size, first+1+random.nextInt(50));
+				merged.addAll(limited(all, first, last, limit));
+			}
+			if (error==null)
+				error = compareTop(all, merged, limit);
+
+			//Decoded from bytes after some edges added one by one, like the edges of the daemon
+			if (error==null){
+				int added = random.nextInt(size+1);
+				EdgeBuffer decoded = limited(all, 0, added, limit);
+				ByteBuffer bytes = ByteBuffer.allocate(12*(size-added));
+				for (int e=added; e<size; ++e)
+					bytes.putInt(all.point_a[e]).putInt(all.point_b[e]).putFloat(all.correlation[e]);
+				bytes.flip();
+				decoded.append(bytes, size-added);
+				error = compareTop(all, decoded, limit);
+			}
+
+			//Edges removed by a filter then more edges offered: the heap is restored for the next offers
+			if (error==null){
+				int half = size/2;
+				EdgeBuffer retained = limited(all, 0, half, limit);
+				PairFilter filter = new PairFilter(2*size+1, 1);
+				filter.addRectangle(0, 0, half+size-random.nextInt(half+1), 1);
+				filter.retain(retained);
+				EdgeBuffer before = new EdgeBuffer();
+				before.addAll(retained);
+				for (int e=half; e<size; ++e){
+					retained.add(all.point_a[e], all.point_b[e], all.correlation[e]);
+					before.add(all.point_a[e], all.point_b[e], all.correlation[e]);
+				}
+				error = compareTop(before, retained, limit);
+			}
+			if (error!=null)
+				error = "run "+runs+", "+size+" edges, limit "+limit+": "+error;
+		}
+
+		//The limit cannot change under the edges kept
+		if (error==null){
+			EdgeBuffer edges = limited(randomEdges(random, 10), 0, 10, 5);
+			try {
+				edges.setLimit(6);
+				error = "limit changed on a buffer with edges";
+			} catch (IllegalStateException e){
+				edges.setLimit(5);
+			}
+		}
+		report("edge buffer, strongest edges", error, runs+" random sets");
+	}
+
+	//Correlate some windows with limits of edges, and compare with the strongest edges of the reference (passing the filter
+	//of the engine, if any), or with all the edges of the same engine if it rounds differently
+	private void checkTop(String name, CorrelationEngine engine, boolean self){
+
+		PairFilter filter = engine instanceof JavaCorrelationEngine ? ((JavaCorrelationEngine)engine).getFilter() : null;
+		String error = null;
+		try {
+			for (int w=0; w<top_frames.length && error==null; ++w){
+				int frame = top_frames[w];
+				EdgeBuffer all = filter!=null ? expected(frame, filter) : expected(frame, 0, 0);
+				if (self){
+					all = new EdgeBuffer();
+					engine.correlate(points(frame, 0, 0), threshold, all);
+				}
+				for (int l=0; l<top_limits.length && error==null; ++l){
+					EdgeBuffer edges = new EdgeBuffer();
+					edges.setLimit(top_limits[l]);
+					engine.correlate(points(frame, 0, 0), threshold, edges);
+					error = compareTop(all, edges, top_limits[l]);
+					if (error!=null)
+						error = "window "+frame+", limit "+top_limits[l]+": "+error;
+				}
+			}
+		} catch (IOException | RuntimeException e){
+			error = e.toString();
+		} finally {
+			engine.shutdown();
+		}
+		report(name, error, top_frames.length+" windows, limits "+Arrays.toString(top_limits));
+	}
+
+	//Run all the checks, return the number of failures
+	public int run(){
+
+		checkEngine("java", new JavaCorrelationEngine(threads, true));
+		checkEngine("prune", new PruningCorrelationEngine(threads, true));
+		checkEngine("prune (scalar kernel)", new PruningCorrelationEngine(threads, false));
+		checkEngine("incremental", new IncrementalCorrelationEngine(threads));
+		checkEngine("incremental (500 points tracked)", new IncrementalCorrelationEngine(threads, 500));
+		checkTolerance("gemm (within tolerance)", new GemmCorrelationEngine(threads));
+		String [] filter_names = {"rectangles", "left-right", "distance 20", "distance 35", "distance 60",
+				"rectangle, left-right and distance 15", "mask", "two regions"};
+		PairFilter [] filters = filters(filter_names);
+		JavaCorrelationEngine java = new JavaCorrelationEngine(threads, true);
+		JavaCorrelationEngine prune = new PruningCorrelationEngine(threads, true);
+		for (int f=0; f<filters.length; ++f){
+			checkFilter("java, "+filter_names[f], java, filters[f]);
+			checkFilter("prune, "+filter_names[f], prune, filters[f]);
+		}
+		java.shutdown();
+		prune.shutdown();
+		checkEdgeBuffer(2);
+		checkTop("java, strongest edges", new JavaCorrelationEngine(threads, true), false);
+		checkTop("scalar, strongest edges", new JavaCorrelationEngine(threads, false), false);
+		checkTop("prune, strongest edges", new PruningCorrelationEngine(threads, true), false);
+		checkTop("incremental, strongest edges", new IncrementalCorrelationEngine(threads), false);
+		checkTop("gemm, strongest edges (of its own edges)", new GemmCorrelationEngine(threads), true);
+		java = new JavaCorrelationEngine(threads, true);
+		java.setFilter(filters[1]);
+		checkTop("java, "+filter_names[1]+", strongest edges", java, false);
+		prune = new PruningCorrelationEngine(threads, true);
+		prune.setFilter(filters[3]);
+		checkTop("prune, "+filter_names[3]+", strongest edges", prune, false);
+		reference.shutdown();
+		System.out.println(checks+" checks, "+failures+" failed");
+		return failures;
+	}
+
+	public static void main(String[] args){
+
+		int threads = Runtime.getRuntime().availableProcessors();
+		if (args.length==2 && args[0].equals("-t"))
+			threads = Integer.parseInt(args[1]);
+		else if (args.length!=0){
+			System.err.println("Usage: BatchCorrelation --verify [-t threads]");
+			System.exit(1);
+		}
+		System.exit(new EngineCheck(threads, 1).run()>0 ? 1 : 0);
+	}
+}
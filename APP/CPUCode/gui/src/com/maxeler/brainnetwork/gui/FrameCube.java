@@ -0,0 +1,69 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+
+package com.maxeler.brainnetwork.gui;
+
+import java.util.List;
+
+//Pixel values of the whole image sequence decoded once on the heap, stored as [pixel][frame]
+public class FrameCube extends FrameSource {
+
+	//Pixel p at frame f is stored in data[p*frames+f], so the history of a pixel is contiguous
+	private final byte [] data;
+
+	//Constructor
+	public FrameCube(List<byte []> decoded, int width, int height){
+
+		//Measure the sequence
+		super(width, height, decoded.size());
+		data = new byte [width*height*frames];
+
+		//Transpose the decoded frames
+		int f = 0;
+		for (byte [] values : decoded){
+			for (int p=0; p<values.length; ++p)
+				data[p*frames+f] = values[p];
+			++f;
+		}
+	}
+
+	@Override
+	public void readFrame(int frame, int [] values){
+		for (int p=0, index=frame; p<values.length; ++p, index+=frames)
+			values[p] = data[index] & 0xff;
+	}
+
+	@Override
+	public void readFrame(int frame, byte [] values){
+		for (int p=0, index=frame; p<values.length; ++p, index+=frames)
+			values[p] = data[index];
+	}
+
+	@Override
+	public void readWindow(int pixel, int frame, int window, byte [] series, int offset){
+
+		//Window longer than the sequence, wrap element by element
+		int base = pixel*frames;
+		if (window>frames){
+			for (int i=0; i<window; ++i)
+				series[offset+i] = data[base+wrap(frame-window+1+i)];
+			return;
+		}
+
+		//Contiguous slice, split in two parts when wrapping around the first frame
+		int first = frame-window+1;
+		if (first>=0){
+			System.arraycopy(data, base+first, series, offset, window);
+		} else {
+			System.arraycopy(data, base+first+frames, series, offset, -first);
+			System.arraycopy(data, base, series, offset-first, frame+1);
+		}
+	}
+}
@@ -0,0 +1,51 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+
+package com.maxeler.brainnetwork.gui;
+
+import java.awt.image.BufferedImage;
+
+//Sequence of frames (8 bits per pixel) read by the GUI and by the analysis
+public abstract class FrameSource {
+
+	//Image size and number of frames
+	public final int width;
+	public final int height;
+	public final int frames;
+
+	//Constructor
+	protected FrameSource(int width, int height, int frames){
+		this.width = width;
+		this.height = height;
+		this.frames = frames;
+	}
+
+	//Extract the analysed channel of an image
+	public static void decode(BufferedImage image, int [] rgb, byte [] values){
+		image.getRGB(0, 0, image.getWidth(), image.getHeight(), rgb, 0, image.getWidth());
+		for (int p=0; p<values.length; ++p)
+			values[p] = (byte)(rgb[p] & 0xff);
+	}
+
+	//Get the index of a frame, considering wrapping
+	public int wrap(int index){
+		index %= frames;
+		return (index>=0) ? index : index+frames;
+	}
+
+	//Copy the values of all the pixels at a given frame
+	public abstract void readFrame(int frame, int [] values);
+
+	//Copy the raw values of all the pixels at a given frame (used for drawing)
+	public abstract void readFrame(int frame, byte [] values);
+
+	//Copy the window of a pixel ending at the given frame, in chronological order
+	public abstract void readWindow(int pixel, int frame, int window, byte [] series, int offset);
+}
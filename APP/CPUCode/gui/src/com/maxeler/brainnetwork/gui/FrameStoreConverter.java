@@ -0,0 +1,105 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+
+package com.maxeler.brainnetwork.gui;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.imageio.ImageIO;
+
+//Preprocessing tool converting a zip of images into a frame store, one image at a time
+public class FrameStoreConverter {
+
+	//Write the header of a frame store
+	private static void writeHeader(FileChannel channel, int width, int height, int frames) throws IOException{
+
+		ByteBuffer header = ByteBuffer.allocate(MappedFrameStore.header_size).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MappedFrameStore.magic);
+		header.putInt(MappedFrameStore.version);
+		header.putInt(width);
+		header.putInt(height);
+		header.putInt(frames);
+		header.clear();
+		while (header.hasRemaining())
+			channel.write(header, header.position());
+	}
+
+	//Convert the images of the zip, returning the number of frames
+	public static int convert(String zip_name, String store_name) throws IOException{
+
+		RandomAccessFile store = new RandomAccessFile(store_name, "rw");
+		ZipInputStream zis = new ZipInputStream(new BufferedInputStream(new FileInputStream(zip_name)));
+		try {
+			FileChannel channel = store.getChannel();
+			channel.truncate(0);
+			channel.position(MappedFrameStore.header_size);
+
+			//Decode and append the images one by one
+			int width = 0, height = 0, frames = 0;
+			int [] rgb = null;
+			ByteBuffer values = null;
+			ZipEntry entry = zis.getNextEntry();
+			while (entry != null) {
+
+				//Get current image
+				BufferedImage image = ImageIO.read(zis);
+				if (rgb==null){
+					width = image.getWidth();
+					height = image.getHeight();
+					rgb = new int [width*height];
+					values = ByteBuffer.allocate(width*height);
+				} else if (image.getWidth()!=width || image.getHeight()!=height)
+					throw new IOException("Image "+entry.getName()+" has a different size");
+
+				//Append the frame
+				values.clear();
+				FrameSource.decode(image, rgb, values.array());
+				while (values.hasRemaining())
+					channel.write(values);
+				++frames;
+
+				//Go to the next image
+				entry = zis.getNextEntry();
+			}
+
+			//Header is written at the end, once the number of frames is known
+			writeHeader(channel, width, height, frames);
+			return frames;
+		} finally {
+			zis.close();
+			store.close();
+		}
+	}
+
+	public static void main(String[] args) {
+
+		if (args.length!=2){
+			System.err.println("Usage: FrameStoreConverter <images.zip> <frames.bin>");
+			System.exit(1);
+		}
+
+		try {
+			int frames = convert(args[0], args[1]);
+			System.out.println("Converted "+frames+" frames into "+args[1]);
+		} catch (Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,245 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+package com.maxeler.brainnetwork.gui;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//Linear correlation as a matrix product: with z-scored series scaled by 1/sqrt(window), the correlation matrix is Z*Z^T
+//Each series is normalized once, then the upper triangle is computed by blocks with a 4x4 register-tiled float kernel
+//Correlations are close to the exact ones, the daemon and the other engines lose precision subtracting the product of the
+//averages from the covariance in float: the difference is at most tolerance(), about 1e-6 for series spread over the
+//range of the pixels, 1e-4 for bright series varying by a few levels (average 240, standard deviation 5), and up to
+//1e-3 for nearly flat ones. Edges that close to the threshold may be found by one engine and not by the other
+public class GemmCorrelationEngine implements CorrelationEngine {
+
+	//Bound of the difference with the correlation of the daemon for a pair of points: rounding of the sums of the matrix
+	//product, growing with the window, and cancellation in the covariance of the daemon, growing with the averages over
+	//the standard deviations (2.4e-7 is four units in the last place of a float around 1)
+	static float tolerance(ActivePoints p, int a, int b){
+		return 1e-7f*p.window + 2.4e-7f*(1+p.average[a]*p.average[b]/(p.standard_deviation[a]*p.standard_deviation[b]));
+	}
+
+	//Rows and columns of a block of the correlation matrix (multiple of the 4x4 tile)
+	private static final int block = 64;
+
+	//Work-stealing pool of worker threads
+	private ForkJoinPool workers = null;
+
+	//Constructor
+	public GemmCorrelationEngine(int threads){
+
+		//Create the pool of worker threads (daemons by default)
+		workers = new ForkJoinPool(threads);
+	}
+
+	//Use all the available cores
+	public GemmCorrelationEngine(){
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	//State shared by the tasks of one computation
+	private ActivePoints p = null;
+	private float threshold = 0;
+	private EdgeBuffer edges = null;
+
+	//Normalized series, row i in [i*window,(i+1)*window), rows padded with zeros up to a multiple of 4
+	private float [] z = new float [0];
+	private int rows = 0;
+
+	//Set to stop the computation in progress
+	private volatile boolean cancelled = false;
+
+	//Tile buffer and packed column block of each worker thread
+	private final ThreadLocal<EdgeBuffer> tile_edges = new ThreadLocal<EdgeBuffer>(){
+		@Override
+		protected EdgeBuffer initialValue(){
+			return new EdgeBuffer(1024);
+		}
+	};
+	private final ThreadLocal<float []> packed = new ThreadLocal<float []>(){
+		@Override
+		protected float [] initialValue(){
+			return new float [0];
+		}
+	};
+
+	//Compute the blocks of rows [first,last), each with all the blocks of columns on and above the diagonal
+	class RowBlocks extends RecursiveAction{
+
+		//UID generated for task serialization
+		private static final long serialVersionUID = 6072478593360185712L;
+
+		//Range of row blocks
+		private int first, last;
+
+		//Constructor
+		public RowBlocks(int first, int last){
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		protected void compute(){
+
+			//Cancelled, nothing left to do
+			if (cancelled)
+				return;
+
+			//Single row block, compute it
+			if (last-first==1){
+				EdgeBuffer found = tile_edges.get();
+				found.setLimit(edges.getLimit());
+				int first_row = first*block;
+				int last_row = Math.min(first_row+block, rows);
+				for (int first_column=first_row; first_column<rows && !cancelled; first_column+=block)
+					multiplyBlock(first_row, last_row, first_column, Math.min(first_column+block, rows), found);
+				publish(found);
+				return;
+			}
+
+			//Split in two halves
+			int middle = (first+last)>>>1;
+			invokeAll(new RowBlocks(first,middle), new RowBlocks(middle,last));
+		}
+	}
+
+	//Z-score each series and scale it, so that the dot product of two rows is their correlation
+	private void normalize(ActivePoints points){
+
+		int window = points.window;
+		rows = (points.size+3)&~3;
+		if (z.length<rows*window)
+			z = new float [rows*window];
+		float scale = (float)(1/Math.sqrt(window));
+		for (int i=0; i<points.size; ++i){
+
+			//Constant series have no correlation
+			float sd = points.standard_deviation[i];
+			float factor = sd>0 ? scale/sd : 0;
+			float average = points.average[i];
+			for (int k=0, offset=i*window; k<window; ++k, ++offset)
+				z[offset] = ((points.series[offset] & 0xff) - average) * factor;
+		}
+		for (int offset=points.size*window; offset<rows*window; ++offset)
+			z[offset] = 0;
+	}
+
+	//Multiply rows [first_row,last_row) by columns [first_column,last_column), keeping the entries above the threshold
+	private void multiplyBlock(int first_row, int last_row, int first_column, int last_column, EdgeBuffer found){
+
+		//Pack the columns as [k][column], so that the kernel reads 4 consecutive columns at each step
+		int window = p.window;
+		int columns = last_column-first_column;
+		float [] b = packed.get();
+		if (b.length<block*window){
+			b = new float [block*window];
+			packed.set(b);
+		}
+		for (int j=0; j<columns; ++j)
+			for (int k=0, offset=(first_column+j)*window; k<window; ++k)
+				b[k*columns+j] = z[offset+k];
+
+		//4x4 tiles, the 16 sums stay in registers
+		for (int i=first_row; i<last_row; i+=4){
+
+			//Tiles entirely below the diagonal are skipped
+			int start = first_column;
+			if (first_column==first_row)
+				start = first_column + ((i-first_row)&~3);
+			int a0 = i*window, a1 = a0+window, a2 = a1+window, a3 = a2+window;
+			for (int j=start; j<last_column; j+=4){
+				float c00=0, c01=0, c02=0, c03=0;
+				float c10=0, c11=0, c12=0, c13=0;
+				float c20=0, c21=0, c22=0, c23=0;
+				float c30=0, c31=0, c32=0, c33=0;
+				for (int k=0, column=j-first_column; k<window; ++k, column+=columns){
+					float b0 = b[column], b1 = b[column+1], b2 = b[column+2], b3 = b[column+3];
+					float x = z[a0+k];
+					c00 += x*b0; c01 += x*b1; c02 += x*b2; c03 += x*b3;
+					x = z[a1+k];
+					c10 += x*b0; c11 += x*b1; c12 += x*b2; c13 += x*b3;
+					x = z[a2+k];
+					c20 += x*b0; c21 += x*b1; c22 += x*b2; c23 += x*b3;
+					x = z[a3+k];
+					c30 += x*b0; c31 += x*b1; c32 += x*b2; c33 += x*b3;
+				}
+				emit(i, j, c00, found); emit(i, j+1, c01, found); emit(i, j+2, c02, found); emit(i, j+3, c03, found);
+				emit(i+1, j, c10, found); emit(i+1, j+1, c11, found); emit(i+1, j+2, c12, found); emit(i+1, j+3, c13, found);
+				emit(i+2, j, c20, found); emit(i+2, j+1, c21, found); emit(i+2, j+2, c22, found); emit(i+2, j+3, c23, found);
+				emit(i+3, j, c30, found); emit(i+3, j+1, c31, found); emit(i+3, j+2, c32, found); emit(i+3, j+3, c33, found);
+			}
+		}
+	}
+
+	//Keep an entry of the upper triangle if active (padding rows and columns are outside [0,size))
+	private void emit(int i, int j, float correlation, EdgeBuffer found){
+
+		if (j>i && j<p.size && (correlation>=threshold || correlation<=(-threshold)))
+			found.add(p.point[i], p.point[j], correlation);
+	}
+
+	//Merge the edges of a row block into the result, one lock per block, and empty the buffer for the next one
+	private void publish(EdgeBuffer found){
+
+		if (found.size==0)
+			return;
+		synchronized (edges){
+			edges.addAll(found);
+		}
+		found.clear();
+	}
+
+	@Override
+	public double correlate(ActivePoints points, float threshold, EdgeBuffer edges){
+
+		//Running time statistics
+		long start = System.nanoTime();
+
+		//Cancelled before starting
+		if (cancelled)
+			throw new CancellationException();
+
+		//Share the points with the tasks
+		this.p = points;
+		this.threshold = threshold;
+		this.edges = edges;
+
+		//Normalize once, then multiply
+		normalize(points);
+		if (rows>0)
+			workers.invoke(new RowBlocks(0, (rows+block-1)/block));
+		this.p = null;
+		this.edges = null;
+		if (cancelled)
+			throw new CancellationException();
+
+		//Calculate running time
+		return (System.nanoTime()-start)/1e9;
+	}
+
+	@Override
+	public void cancel(){
+
+		//Tasks check the flag between blocks
+		cancelled = true;
+	}
+
+	@Override
+	public void resume(){
+		cancelled = false;
+	}
+
+	@Override
+	public void shutdown(){
+		workers.shutdownNow();
+	}
+}
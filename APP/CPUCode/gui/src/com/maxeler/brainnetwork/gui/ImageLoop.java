@@ -12,164 +12,145 @@ package com.maxeler.brainnetwork.gui;
 
 import java.awt.Color;
 import java.awt.Graphics;
-import java.awt.Point;
 import java.awt.image.BufferedImage;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.concurrent.Semaphore;
+import java.awt.image.DataBufferByte;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.swing.JComponent;
 
-//Describe the correlation between two points (pixel)
-class Edge{
-
-	//Two points
-	public int [] point = new int [2];
-	public float correlation;
-
-	//Given x resolution, get selected endpoint as (x,y) coordinates
-	public Point getEndPoint(int resolution, int select){
-
-		return new Point (point[select%2]%resolution,point[select%2]/resolution);
-	}
-}
-
 //Loop of images to emulate video data on which it is possible to draw correlation edges
-public class ImageLoop extends JComponent implements Runnable{
+public class ImageLoop extends JComponent{
 
 	//UID generated for component serialization
 	private static final long serialVersionUID = -4925797469985056177L;
 
-	//Two list of edges, one used to draw superimposed edges and the other to add edges from outside
-	private final LinkedList<Edge> edges = new LinkedList<Edge>();
-	private final LinkedList<Edge> edges_temp = new LinkedList<Edge>();
+	//Empty set of edges, shown when there is nothing to draw (never modified)
+	private static final EdgeBuffer no_edges = new EdgeBuffer(0);
+
+	//Complete set of edges to draw, replaced as a whole when a computation ends (not modified while published)
+	private final AtomicReference<EdgeBuffer> edges = new AtomicReference<EdgeBuffer>(no_edges);
+
+	//Set of edges being painted by the event thread, null between paints
+	private volatile EdgeBuffer drawing = null;
+
+	//Timers of the kernel drawing on this loop (null if not measured) and last set of edges painted
+	private StageTimers timers = null;
+	private LatencyHistogram paint_timer = null;
+	private LatencyHistogram end_to_end_timer = null;
+	private EdgeBuffer painted = null;
 
 	//Reference to image sequence
-	protected BufferedImage [] images = null;
+	protected FrameSource source = null;
+
+	//Image drawn as background, its pixels are overwritten with the current frame
+	private BufferedImage image = null;
+	private byte [] pixels = null;
 
 	//Constructor
-	public ImageLoop(BufferedImage [] images) {
+	public ImageLoop(FrameSource source) {
 
 		//Copy reference
-		this.images = images;
+		this.source = source;
 	}
 
-	//Non-blocking synchronization... if one image update is too slow, skip the next frame
-	Semaphore mutex = new Semaphore(1,true);
+	//Set while a repaint is pending... if one image update is too slow, skip the next frame
+	private final AtomicBoolean painting = new AtomicBoolean(false);
 
-	//In order to run as image update as thread
-	@Override
-	public void run() {
+	//Render stage: ask the event thread to paint the current frame, return false if the previous one is still pending
+	public boolean render() {
 
-		//Check the non-blocking mutex
-		if (!mutex.tryAcquire()){
-			return;
-		}
+		//Check the non-blocking flag, cleared once painted
+		if (!painting.compareAndSet(false, true))
+			return false;
 
 		//Repaint component
 		this.repaint();
-
-		//Release the resource
-		mutex.release();
+		return true;
 	}
 
-	//Mutexes to synchronize the addition and clearing of edges
-	Semaphore edge_mutex = new Semaphore(1,true);
-	Semaphore clean_mutex = new Semaphore(1,true);
-
 	//Paint the component
 	@Override
 	public void paintComponent(Graphics g) {
 
+		//Pending frame served, accept the next one
+		long start = System.nanoTime();
+		painting.set(false);
+
 		//Paint the background
 		super.paintComponent(g);
 
-		//Draw the brain image
-		g.drawImage(images[BrainNetwork.frame], 0, 0, this);
-
-		//Iterate and draw all the correlation edge
-		try{
-
-			//Copy temporary edges into the container in order to draw them all (mutual exclusive with temporary edge addition)
-			edge_mutex.acquire();
-			edges.addAll(edges_temp);
-			edges_temp.clear();
-			edge_mutex.release();
-
-			//Draw edges contained in the main list (mutual exclusive with edge clearing)
-			clean_mutex.acquire();
-			Iterator<Edge> iter = edges.iterator();
-			while(iter.hasNext()){
-
-				//Get the two points
-				Edge temp = iter.next();
-				Point a = temp.getEndPoint(this.getWidth(),0);
-				Point b = temp.getEndPoint(this.getWidth(),1);
-
-				//Draw the two endpoints
-				g.setColor(Color.blue);
-				g.drawLine(a.x-3,a.y,a.x+3,a.y);
-				g.drawLine(a.x,a.y-3,a.x,a.y+3);
-				g.drawLine(b.x-3,b.y,b.x+3,b.y);
-				g.drawLine(b.x,b.y-3,b.x,b.y+3);
-
-				//Different color depending by positive or negative correlation
-				if (temp.correlation>=0)
-					g.setColor(Color.green);
-				else
-					g.setColor(Color.red);
-
-				//Finally, draw the edge
-				g.drawLine(a.x,a.y,b.x,b.y);
-			}
-			clean_mutex.release();
-
-		} catch (Exception e){
-			e.printStackTrace();
-			System.exit(1);
+		//Draw the brain image (only the current frame is read from the sequence), in grayscale: the sources keep only the
+		//analysed channel of the images, not their colors
+		if (image==null){
+			image = new BufferedImage(source.width, source.height, BufferedImage.TYPE_BYTE_GRAY);
+			pixels = ((DataBufferByte)image.getRaster().getDataBuffer()).getData();
+		}
+		source.readFrame(BrainNetwork.frame, pixels);
+		g.drawImage(image, 0, 0, this);
+
+		//Draw all the correlation edges of the last published set (without locks, it is not refilled while drawn)
+		//Announce it before drawing, and check it is still published, so that its kernel does not take it back meanwhile
+		EdgeBuffer current;
+		do {
+			current = edges.get();
+			drawing = current;
+		} while (edges.get()!=current);
+		int resolution = this.getWidth();
+		for (int e=0; e<current.size; ++e){
+
+			//Get the two points
+			int ax = current.point_a[e]%resolution, ay = current.point_a[e]/resolution;
+			int bx = current.point_b[e]%resolution, by = current.point_b[e]/resolution;
+
+			//Draw the two endpoints
+			g.setColor(Color.blue);
+			g.drawLine(ax-3,ay,ax+3,ay);
+			g.drawLine(ax,ay-3,ax,ay+3);
+			g.drawLine(bx-3,by,bx+3,by);
+			g.drawLine(bx,by-3,bx,by+3);
+
+			//Different color depending by positive or negative correlation
+			if (current.correlation[e]>=0)
+				g.setColor(Color.green);
+			else
+				g.setColor(Color.red);
+
+			//Finally, draw the edge
+			g.drawLine(ax,ay,bx,by);
 		}
 
+		//Time spent painting and, the first time a set of edges is shown, since its computation started
+		if (timers!=null){
+			paint_timer.recordSince(start);
+			if (current!=painted && current.timestamp!=0)
+				end_to_end_timer.recordSince(current.timestamp);
+		}
+		painted = current;
+		drawing = null;
 	}
 
-	//Add an element to the list of edges to draw on the image
-	public void addEdge(int x, int y, float correlation){
+	//Measure the painting with the timers of a kernel
+	public void setTimers(StageTimers timers){
 
-		//Create a new edge
-		Edge temp = new Edge();
-		temp.point[0]=x;
-		temp.point[1]=y;
-		temp.correlation=correlation;
+		paint_timer = timers.stage(StageTimers.paint);
+		end_to_end_timer = timers.stage(StageTimers.end_to_end);
+		this.timers = timers;
+	}
 
-		try{
+	//Publish a new complete set of edges to draw, the caller must not modify it until it is released
+	public void setEdges(EdgeBuffer edges){
+		this.edges.set(edges);
+	}
 
-			//Add the edge to the temporary list (mutual exclusive with copying temporary edges)
-			edge_mutex.acquire();
-			edges_temp.addLast(temp);
-			edge_mutex.release();
-		} catch (Exception e){
-			e.printStackTrace();
-			System.exit(1);
-		}
+	//Tell whether a set of edges is neither published nor being painted, so that it can be refilled
+	//(a set released once stays released until it is published again)
+	public boolean isReleased(EdgeBuffer edges){
+		return edges!=this.edges.get() && edges!=drawing;
 	}
 
 	//Clear all the edges
 	public void clearEdges(){
-
-		try{
-
-			//Clear temporary edges (mutual exclusive with adding temporary edges)
-			edge_mutex.acquire();
-			edges_temp.clear();
-			edge_mutex.release();
-
-			//Clear edges (mutual exclusive with drawing edges)
-			clean_mutex.acquire();
-			edges.clear();
-			clean_mutex.release();
-
-		} catch (Exception e){
-			e.printStackTrace();
-			System.exit(1);
-		}
+		edges.set(no_edges);
 	}
-}
\ No newline at end of file
+}
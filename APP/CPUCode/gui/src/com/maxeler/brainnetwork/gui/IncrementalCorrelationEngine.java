@@ -0,0 +1,368 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+
+package com.maxeler.brainnetwork.gui;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Linear correlation updated from the previous window: the integer dot product of every pair of tracked points is kept, and
+//when the window slides by d frames it is updated with the d samples entering and the d samples leaving (O(d) instead of O(window))
+//Points joining the active set get their pairs computed in full, points leaving free their slot; the dot products are exact,
+//so the correlations are the same of a full recompute. Above max_points active points the engine recomputes everything
+//The state belongs to one sequence of windows: separate windows must not be correlated at the same time by the same engine
+public class IncrementalCorrelationEngine implements CorrelationEngine {
+
+	//Default maximum number of tracked points (about 8M pairs, 32MB of sums)
+	public static final int default_max_points = 4096;
+
+	//Rows of a leaf task
+	private static final int rows_per_task = 8;
+
+	//Maximum number of tracked points, above it every window is recomputed in full
+	private final int max_points;
+
+	//Work-stealing pool of worker threads, and engine used above max_points
+	private ForkJoinPool workers = null;
+	private JavaCorrelationEngine full = null;
+
+	//Tracked points: slot of each point identifier (-1 if not tracked), identifier in each slot (-1 if free) and free slots
+	private int [] slot_of = new int [0];
+	private int [] id_of = new int [0];
+	private int [] free = new int [0];
+	private int free_count = 0;
+	private int slots = 0;
+
+	//Window of each slot at the last computation, slot s in [s*window,(s+1)*window)
+	private byte [] history = new byte [0];
+	private int window = 0;
+
+	//Dot product of each pair of slots s<t at t*(t-1)/2+s
+	private int [] sums = new int [0];
+
+	//Frame of the last window, and whether the tracked state is valid
+	private int last_frame = 0;
+	private boolean valid = false;
+
+	//Per point of the current computation: slot and whether its pairs are computed in full
+	private int [] slot = new int [0];
+	private boolean [] fresh = new boolean [0];
+	private int [] seen = new int [0];
+	private int generation = 0;
+
+	//State shared by the tasks of one computation
+	private ActivePoints p = null;
+	private float threshold = 0;
+	private EdgeBuffer edges = null;
+	private int shift = 0;
+
+	//Set to stop the computation in progress
+	private volatile boolean cancelled = false;
+
+	//Pairs updated from the previous window and pairs computed in full, since the engine was created
+	private final AtomicLong updated = new AtomicLong();
+	private final AtomicLong recomputed = new AtomicLong();
+
+	//Tile buffer of each worker thread
+	private final ThreadLocal<EdgeBuffer> tile_edges = new ThreadLocal<EdgeBuffer>(){
+		@Override
+		protected EdgeBuffer initialValue(){
+			return new EdgeBuffer(1024);
+		}
+	};
+
+	//Constructor
+	public IncrementalCorrelationEngine(int threads, int max_points){
+
+		//Sums are indexed with an integer
+		if (max_points<2 || max_points>46340)
+			throw new IllegalArgumentException("Tracked points must be in [2,46340]: "+max_points);
+		this.max_points = max_points;
+		workers = new ForkJoinPool(threads);
+		full = new JavaCorrelationEngine(threads);
+	}
+
+	public IncrementalCorrelationEngine(int threads){
+		this(threads, default_max_points);
+	}
+
+	//Use all the available cores
+	public IncrementalCorrelationEngine(){
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	//Pairs updated from the previous window since the engine was created
+	public long getUpdatedPairs(){
+		return updated.get();
+	}
+
+	//Pairs computed in full (new points, jumps of the window, too many points) since the engine was created
+	public long getRecomputedPairs(){
+		return recomputed.get();
+	}
+
+	//Correlate the pairs (i,j) with i<j of the rows j in [first,last)
+	class Rows extends RecursiveAction{
+
+		//UID generated for task serialization
+		private static final long serialVersionUID = 8431409127796145267L;
+
+		//Range of rows
+		private int first, last;
+
+		//Constructor
+		public Rows(int first, int last){
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		protected void compute(){
+
+			//Cancelled, nothing left to do
+			if (cancelled)
+				return;
+
+			//Small enough, compute directly
+			if (last-first<=rows_per_task){
+				EdgeBuffer found = tile_edges.get();
+				found.setLimit(edges.getLimit());
+				for (int j=first; j<last; ++j)
+					correlateRow(j, found);
+				publish(found);
+				return;
+			}
+
+			//Split in two halves
+			int middle = (first+last)>>>1;
+			invokeAll(new Rows(first,middle), new Rows(middle,last));
+		}
+	}
+
+	//Update the dot products of point j with the points before it, keeping the active edges
+	private void correlateRow(int j, EdgeBuffer found){
+
+		byte [] series = p.series;
+		int window = p.window;
+		int t = slot[j];
+		int offset_j = j*window;
+		int history_j = t*window;
+		long incremental = 0;
+		for (int i=0; i<j; ++i){
+
+			//Index of the pair of slots
+			int s = slot[i];
+			int index = s<t ? t*(t-1)/2+s : s*(s-1)/2+t;
+			int offset_i = i*window;
+			int sum;
+			if (fresh[i] || fresh[j]){
+
+				//Full dot product
+				sum = 0;
+				for (int k=0; k<window; ++k)
+					sum += (series[offset_i+k] & 0xff) * (series[offset_j+k] & 0xff);
+			} else {
+
+				//Samples entering at the end of the new window, samples leaving at the start of the old one
+				sum = sums[index];
+				for (int k=window-shift; k<window; ++k)
+					sum += (series[offset_i+k] & 0xff) * (series[offset_j+k] & 0xff);
+				for (int k=0, history_i=s*window; k<shift; ++k)
+					sum -= (history[history_i+k] & 0xff) * (history[history_j+k] & 0xff);
+				++incremental;
+			}
+			sums[index] = sum;
+
+			//Add the edge if active
+			float correlation = JavaCorrelationEngine.correlation(p,i,j,sum);
+			if (correlation>=threshold || correlation<=(-threshold))
+				found.add(p.point[i], p.point[j], correlation);
+		}
+		updated.addAndGet(incremental);
+		recomputed.addAndGet(j-incremental);
+	}
+
+	//Merge the edges of a task into the result and empty the buffer for the next one
+	private void publish(EdgeBuffer found){
+
+		if (found.size==0)
+			return;
+		synchronized (edges){
+			edges.addAll(found);
+		}
+		found.clear();
+	}
+
+	//Forget all the tracked points
+	private void reset(){
+
+		for (int s=0; s<slots; ++s)
+			if (id_of[s]>=0)
+				slot_of[id_of[s]] = -1;
+		slots = 0;
+		free_count = 0;
+		valid = false;
+	}
+
+	//Grow the arrays indexed by slot to hold at least the given number of slots
+	private void ensureSlots(int count){
+
+		if (count<=id_of.length)
+			return;
+		int capacity = Math.min(max_points, Math.max(count, Math.max(64, 2*id_of.length)));
+		id_of = Arrays.copyOf(id_of, capacity);
+		free = Arrays.copyOf(free, capacity);
+		seen = Arrays.copyOf(seen, capacity);
+		history = Arrays.copyOf(history, capacity*window);
+		sums = Arrays.copyOf(sums, capacity*(capacity-1)/2);
+	}
+
+	//Whether the new window of a point continues its window of the last computation, shifted by the given frames
+	private boolean continues(int s, int i, int shift){
+
+		for (int k=shift, h=s*window, offset=i*window-shift; k<window; ++k)
+			if (history[h+k]!=p.series[offset+k])
+				return false;
+		return true;
+	}
+
+	//Assign a slot to every point, freeing those of the points no longer active, and decide which rows are computed in full
+	private void track(ActivePoints points){
+
+		//Slide by less than a window, otherwise nothing can be reused
+		shift = valid ? points.frame-last_frame : 0;
+		boolean sliding = shift>0 && shift<window;
+		if (!sliding)
+			reset();
+
+		//Mark the tracked points still active
+		++generation;
+		int max_id = 0;
+		for (int i=0; i<points.size; ++i)
+			max_id = Math.max(max_id, points.point[i]);
+		if (slot_of.length<=max_id){
+			int old = slot_of.length;
+			slot_of = Arrays.copyOf(slot_of, Math.max(max_id+1, 2*old));
+			Arrays.fill(slot_of, old, slot_of.length, -1);
+		}
+		if (slot.length<points.size){
+			slot = new int [points.size];
+			fresh = new boolean [points.size];
+		}
+		for (int i=0; i<points.size; ++i){
+			int s = slot_of[points.point[i]];
+			slot[i] = s;
+			if (s>=0)
+				seen[s] = generation;
+		}
+
+		//Free the slots of the points that left
+		for (int s=0; s<slots; ++s)
+			if (id_of[s]>=0 && seen[s]!=generation){
+				slot_of[id_of[s]] = -1;
+				id_of[s] = -1;
+				free[free_count++] = s;
+			}
+
+		//Give a slot to the points that joined, reusing the free ones first
+		for (int i=0; i<points.size; ++i){
+			if (slot[i]>=0){
+				fresh[i] = !continues(slot[i], i, shift);
+				continue;
+			}
+			int s;
+			if (free_count>0)
+				s = free[--free_count];
+			else {
+				ensureSlots(slots+1);
+				s = slots++;
+			}
+			id_of[s] = points.point[i];
+			slot_of[points.point[i]] = s;
+			slot[i] = s;
+			fresh[i] = true;
+		}
+	}
+
+	@Override
+	public double correlate(ActivePoints points, float threshold, EdgeBuffer edges){
+
+		//Running time statistics
+		long start = System.nanoTime();
+
+		//Cancelled before starting, the sums are left as they are
+		if (cancelled)
+			throw new CancellationException();
+
+		//Too many points to track, recompute everything
+		if (points.size>max_points){
+			reset();
+			recomputed.addAndGet((long)points.size*(points.size-1)/2);
+			return full.correlate(points, threshold, edges);
+		}
+
+		//New length of the series, nothing can be reused
+		if (points.window!=window){
+			reset();
+			window = points.window;
+			history = new byte [id_of.length*window];
+		}
+
+		//Share the points with the tasks
+		this.p = points;
+		this.threshold = threshold;
+		this.edges = edges;
+		track(points);
+
+		//Update all the pairs on the pool
+		if (points.size>1)
+			workers.invoke(new Rows(1,points.size));
+		this.p = null;
+		this.edges = null;
+
+		//Sums are partially updated, start again from scratch next time
+		if (cancelled){
+			reset();
+			throw new CancellationException();
+		}
+
+		//Keep the windows for the next update
+		for (int i=0; i<points.size; ++i)
+			System.arraycopy(points.series, i*window, history, slot[i]*window, window);
+		last_frame = points.frame;
+		valid = true;
+
+		//Calculate running time
+		return (System.nanoTime()-start)/1e9;
+	}
+
+	@Override
+	public void cancel(){
+
+		//Tasks check the flag before computing their rows
+		cancelled = true;
+		full.cancel();
+	}
+
+	@Override
+	public void resume(){
+		cancelled = false;
+		full.resume();
+	}
+
+	@Override
+	public void shutdown(){
+		workers.shutdownNow();
+		full.shutdown();
+	}
+}
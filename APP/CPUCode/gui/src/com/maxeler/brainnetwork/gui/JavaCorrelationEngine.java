@@ -0,0 +1,353 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+
+package com.maxeler.brainnetwork.gui;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//Multi-threaded linear correlation running inside the GUI process (same math of the CPU daemon)
+//The upper triangle of the all-pairs matrix is split recursively into cache-sized tiles, balanced by work stealing
+public class JavaCorrelationEngine implements CorrelationEngine {
+
+	//Pearson correlation between two points, as calculated by the CPU daemon
+	static float correlation(ActivePoints p, int a, int b){
+
+		//Calculate covariance
+		byte [] series = p.series;
+		int window = p.window;
+		int offset_a = a*window;
+		int offset_b = b*window;
+		float cov = 0;
+		for (int k=0; k<window; ++k)
+			cov += (series[offset_a+k] & 0xff) * (series[offset_b+k] & 0xff);
+		cov /= window;
+		cov -= p.average[a] * p.average[b];
+
+		//Calculate correlation
+		return cov / (p.standard_deviation[a] * p.standard_deviation[b]);
+	}
+
+	//Same correlation from the integer dot product of the two series (identical while the dot product fits a float exactly)
+	static float correlation(ActivePoints p, int a, int b, int dot){
+
+		//Calculate covariance
+		float cov = dot;
+		cov /= p.window;
+		cov -= p.average[a] * p.average[b];
+
+		//Calculate correlation
+		return cov / (p.standard_deviation[a] * p.standard_deviation[b]);
+	}
+
+	//Bytes of temporal series from a row tile and a column tile that should stay in L1 cache
+	private static final int tile_bytes = 16*1024;
+
+	//Work-stealing pool of worker threads
+	private ForkJoinPool workers = null;
+
+	//Dot product kernel of each worker thread, vectorized if requested and supported by the JVM
+	protected final ThreadLocal<DotProductKernel> kernels;
+
+	//Constructor
+	public JavaCorrelationEngine(int threads, final boolean vector){
+
+		//Create the pool of worker threads (daemons by default)
+		workers = new ForkJoinPool(threads);
+		kernels = new ThreadLocal<DotProductKernel>(){
+			@Override
+			protected DotProductKernel initialValue(){
+				return DotProductKernel.create(vector);
+			}
+		};
+	}
+
+	//Vectorized if possible
+	public JavaCorrelationEngine(int threads){
+		this(threads, true);
+	}
+
+	//Use all the available cores
+	public JavaCorrelationEngine(){
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	//State shared by the tasks of one computation
+	protected ActivePoints p = null;
+	protected float threshold = 0;
+	private EdgeBuffer edges = null;
+	private int tile = 0;
+	private PairFilter pairs = null;
+
+	//Pairs to correlate (all if null) and index of the points by position, used when some pairs are filtered out
+	private volatile PairFilter filter = null;
+	private final SpatialIndex index = new SpatialIndex();
+
+	//Tile buffer of each worker thread, reused by all the tiles it computes
+	private final ThreadLocal<EdgeBuffer> tile_edges = new ThreadLocal<EdgeBuffer>(){
+		@Override
+		protected EdgeBuffer initialValue(){
+			return new EdgeBuffer(1024);
+		}
+	};
+
+	//Set to stop the computation in progress
+	private volatile boolean cancelled = false;
+
+	//Correlate pairs (i,j) with i<j inside the range [first,last) of points
+	class Triangle extends RecursiveAction{
+
+		//UID generated for task serialization
+		private static final long serialVersionUID = 3195802287425370640L;
+
+		//Range of points
+		private int first, last;
+
+		//Constructor
+		public Triangle(int first, int last){
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		protected void compute(){
+
+			//Cancelled, nothing left to do
+			if (cancelled)
+				return;
+
+			//Small enough, compute directly
+			if (last-first<=tile){
+				EdgeBuffer found = tile_edges.get();
+				found.setLimit(tileLimit());
+				correlateTile(first,last,first,last,found);
+				publish(found);
+				return;
+			}
+
+			//Split into two smaller triangles and the square between them
+			int middle = (first+last)>>>1;
+			invokeAll(new Triangle(first,middle), new Triangle(middle,last), new Square(first,middle,middle,last));
+		}
+	}
+
+	//Correlate all the pairs between rows [first_row,last_row) and columns [first_column,last_column)
+	class Square extends RecursiveAction{
+
+		//UID generated for task serialization
+		private static final long serialVersionUID = -2271586180327069823L;
+
+		//Range of rows and columns
+		private int first_row, last_row;
+		private int first_column, last_column;
+
+		//Constructor
+		public Square(int first_row, int last_row, int first_column, int last_column){
+			this.first_row = first_row;
+			this.last_row = last_row;
+			this.first_column = first_column;
+			this.last_column = last_column;
+		}
+
+		@Override
+		protected void compute(){
+
+			//Cancelled, nothing left to do
+			if (cancelled)
+				return;
+
+			//Small enough, compute directly
+			int rows = last_row-first_row;
+			int columns = last_column-first_column;
+			if (rows<=tile && columns<=tile){
+				EdgeBuffer found = tile_edges.get();
+				found.setLimit(tileLimit());
+				correlateTile(first_row,last_row,first_column,last_column,found);
+				publish(found);
+				return;
+			}
+
+			//Split the longest side
+			if (rows>=columns){
+				int middle = (first_row+last_row)>>>1;
+				invokeAll(new Square(first_row,middle,first_column,last_column), new Square(middle,last_row,first_column,last_column));
+			} else {
+				int middle = (first_column+last_column)>>>1;
+				invokeAll(new Square(first_row,last_row,first_column,middle), new Square(first_row,last_row,middle,last_column));
+			}
+		}
+	}
+
+	//Correlate the blocks of pairs [first,last) of the spatial index
+	class Blocks extends RecursiveAction{
+
+		//UID generated for task serialization
+		private static final long serialVersionUID = -5154917934417391062L;
+
+		//Range of blocks
+		private int first, last;
+
+		//Constructor
+		public Blocks(int first, int last){
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		protected void compute(){
+
+			//Cancelled, nothing left to do
+			if (cancelled)
+				return;
+
+			//Single block: the triangle of its first cell (when on the diagonal) and the square of the following columns
+			if (last-first==1){
+				int first_row = index.getBlock(first,0);
+				int last_row = index.getBlock(first,1);
+				int first_column = index.getBlock(first,2);
+				int last_column = index.getBlock(first,3);
+				if (first_column==first_row){
+					if (last_column>last_row)
+						invokeAll(new Triangle(first_row,last_row), new Square(first_row,last_row,last_row,last_column));
+					else
+						new Triangle(first_row,last_row).compute();
+				} else
+					new Square(first_row,last_row,first_column,last_column).compute();
+				return;
+			}
+
+			//Split in two halves
+			int middle = (first+last)>>>1;
+			invokeAll(new Blocks(first,middle), new Blocks(middle,last));
+		}
+	}
+
+	//Correlate the pairs (i,j) with j>i of rows [first_row,last_row) and columns [first_column,last_column) of a tile
+	protected void correlateTile(int first_row, int last_row, int first_column, int last_column, EdgeBuffer found){
+
+		DotProductKernel kernel = kernels.get();
+		kernel.setColumns(p.series, p.window, first_column, last_column);
+		for (int i=first_row; i<last_row; ++i)
+			if (i+1<last_column)
+				correlateRow(kernel,i,Math.max(first_column,i+1),found);
+	}
+
+	//Called before the tiles are computed, the points are available in p
+	protected void prepare(){
+	}
+
+	//Correlate point i with the columns of the kernel from first on, keeping active edges in the tile buffer
+	private void correlateRow(DotProductKernel kernel, int i, int first, EdgeBuffer found){
+
+		int [] dot = kernel.dot(i);
+		for (int j=first; j<kernel.last; ++j){
+
+			//Add the edge if active
+			float correlation = correlation(p,i,j,dot[j-kernel.first]);
+			if (correlation>=threshold || correlation<=(-threshold))
+				found.add(p.point[i], p.point[j], correlation);
+		}
+	}
+
+	//Limit of the edges kept by a task: the strongest ones, unless a filter removes some of them afterwards
+	private int tileLimit(){
+		return pairs!=null ? 0 : edges.getLimit();
+	}
+
+	//Merge the edges of a tile into the result, one lock per tile, and empty the tile buffer for the next one
+	private void publish(EdgeBuffer found){
+
+		//Blocks are selected cell by cell, remove the pairs at the border of the filter
+		//The points are reordered by cell, put the ends back in ascending order like without filter
+		if (pairs!=null){
+			pairs.retain(found);
+			for (int e=0; e<found.size; ++e)
+				if (found.point_a[e]>found.point_b[e]){
+					int a = found.point_a[e];
+					found.point_a[e] = found.point_b[e];
+					found.point_b[e] = a;
+				}
+		}
+		if (found.size==0)
+			return;
+		synchronized (edges){
+			edges.addAll(found);
+		}
+		found.clear();
+	}
+
+	//Correlate only the pairs passing the filter, null for all the pairs (applies from the next computation)
+	//The points outside the filter are left out and the others are correlated in order of position, in a copy
+	//The edges are the same as without filter, minus the pairs not passing it: point_a<point_b, correlations unchanged
+	public void setFilter(PairFilter filter){
+		this.filter = filter;
+	}
+	public PairFilter getFilter(){
+		return filter;
+	}
+
+	@Override
+	public double correlate(ActivePoints points, float threshold, EdgeBuffer edges){
+
+		//Running time statistics
+		long start = System.nanoTime();
+
+		//Cancelled before starting
+		if (cancelled)
+			throw new CancellationException();
+
+		//Share the points with the tasks
+		this.p = points;
+		this.threshold = threshold;
+		this.edges = edges;
+		PairFilter filter = this.filter;
+		this.pairs = filter==null || filter.isEmpty() ? null : filter;
+
+		//Keep the points in some pair, grouped by cell (in a copy, the points given are left as they are)
+		if (pairs!=null)
+			p = points = index.build(points, pairs);
+
+		//Tile side, according to the length of the temporal series
+		tile = Math.max(16, tile_bytes/(2*points.window));
+		prepare();
+
+		//Run the whole triangle, or the selected blocks, on the pool
+		if (pairs==null)
+			workers.invoke(new Triangle(0,points.size));
+		else if (index.getBlockCount()>0)
+			workers.invoke(new Blocks(0,index.getBlockCount()));
+		this.p = null;
+		this.edges = null;
+		this.pairs = null;
+		if (cancelled)
+			throw new CancellationException();
+
+		//Calculate running time
+		return (System.nanoTime()-start)/1e9;
+	}
+
+	@Override
+	public void cancel(){
+
+		//Tasks check the flag before computing their tiles
+		cancelled = true;
+	}
+
+	@Override
+	public void resume(){
+		cancelled = false;
+	}
+
+	@Override
+	public void shutdown(){
+		workers.shutdownNow();
+	}
+}
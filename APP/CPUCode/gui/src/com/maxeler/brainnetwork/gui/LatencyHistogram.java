@@ -0,0 +1,192 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+package com.maxeler.brainnetwork.gui;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Lock-free histogram of durations in nanoseconds with about 1% relative error (log-linear buckets, as HdrHistogram)
+//Values below 128 have a bucket each, then every power of two is split in 64 buckets
+public class LatencyHistogram implements LatencyHistogramMBean {
+
+	//Buckets per power of two is 2^(sub_bits-1)
+	private static final int sub_bits = 7;
+	private static final int half = 1<<(sub_bits-1);
+
+	//Longest duration tracked (about 18 minutes), longer ones fall in the last bucket
+	private static final long max_value = (1L<<40)-1;
+	private static final int buckets = index(max_value)+1;
+
+	//Bucket of a value
+	static int index(long value){
+
+		int msb = 63-Long.numberOfLeadingZeros(value);
+		if (msb<sub_bits)
+			return (int)value;
+		int shift = msb-sub_bits+1;
+		return (shift<<(sub_bits-1)) + (int)(value>>>shift);
+	}
+
+	//Lowest and highest value of a bucket
+	static long lowest(int index){
+
+		if (index<2*half)
+			return index;
+		int shift = (index>>>(sub_bits-1))-1;
+		return (long)(index-(shift<<(sub_bits-1)))<<shift;
+	}
+	static long highest(int index){
+		return lowest(index+1)-1;
+	}
+
+	//Recorded values
+	private final AtomicLongArray counts = new AtomicLongArray(buckets);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	//Number of resets, a snapshot taken across a reset has the new number
+	private final AtomicLong resets = new AtomicLong();
+
+	//Record a duration in nanoseconds
+	public void record(long nanoseconds){
+
+		long value = Math.min(Math.max(nanoseconds, 0), max_value);
+		counts.incrementAndGet(index(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long current = max.get();
+		while (value>current && !max.compareAndSet(current, value))
+			current = max.get();
+	}
+
+	//Record the time elapsed since start (from System.nanoTime)
+	public void recordSince(long start){
+		record(System.nanoTime()-start);
+	}
+
+	//Copy of the recorded values (not atomic as a whole, values recorded meanwhile may be partially included)
+	public Snapshot snapshot(){
+
+		Snapshot s = new Snapshot();
+		for (int i=0; i<buckets; ++i)
+			s.counts[i] = counts.get(i);
+		s.count = count.get();
+		s.sum = sum.get();
+		s.max = max.get();
+		s.resets = resets.get();
+		return s;
+	}
+
+	@Override
+	public void reset(){
+
+		//Counted before clearing, so that a snapshot seeing any cleared value sees the reset too
+		resets.incrementAndGet();
+		for (int i=0; i<buckets; ++i)
+			counts.set(i, 0);
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	@Override
+	public long getCount(){
+		return count.get();
+	}
+	@Override
+	public double getMean(){
+		long n = count.get();
+		return n==0 ? 0 : sum.get()/1e3/n;
+	}
+	@Override
+	public double getMax(){
+		return max.get()/1e3;
+	}
+	@Override
+	public double getP50(){
+		return snapshot().percentile(50)/1e3;
+	}
+	@Override
+	public double getP90(){
+		return snapshot().percentile(90)/1e3;
+	}
+	@Override
+	public double getP99(){
+		return snapshot().percentile(99)/1e3;
+	}
+	@Override
+	public double getP999(){
+		return snapshot().percentile(99.9)/1e3;
+	}
+
+	//Plain copy of a histogram, used to compute statistics over an interval
+	public static class Snapshot {
+
+		final long [] counts = new long [buckets];
+		long count = 0;
+		long sum = 0;
+		long max = 0;
+		long resets = 0;
+
+		//Values recorded after the given older snapshot (the maximum is approximated by its bucket)
+		//If the histogram has been reset in between, the values recorded since the reset, all of this snapshot
+		public Snapshot since(Snapshot older){
+
+			Snapshot s = new Snapshot();
+			s.resets = resets;
+			if (resets!=older.resets || count<older.count){
+				System.arraycopy(counts, 0, s.counts, 0, buckets);
+				s.count = count;
+				s.sum = sum;
+				s.max = max;
+				return s;
+			}
+			//Never negative, an older snapshot taken during a reset may still hold some of the values cleared
+			for (int i=0; i<buckets; ++i){
+				s.counts[i] = Math.max(0, counts[i]-older.counts[i]);
+				if (s.counts[i]>0)
+					s.max = Math.min(highest(i), max);
+			}
+			s.count = count-older.count;
+			s.sum = Math.max(0, sum-older.sum);
+			return s;
+		}
+
+		public long getCount(){
+			return count;
+		}
+
+		//Mean in nanoseconds
+		public double mean(){
+			return count==0 ? 0 : (double)sum/count;
+		}
+
+		//Maximum in nanoseconds
+		public long max(){
+			return max;
+		}
+
+		//Value in nanoseconds below which the given percentage of the values falls (highest value of its bucket)
+		public long percentile(double percentage){
+
+			if (count==0)
+				return 0;
+			long rank = Math.max(1, (long)Math.ceil(percentage/100*count));
+			long seen = 0;
+			for (int i=0; i<buckets; ++i){
+				seen += counts[i];
+				if (seen>=rank)
+					return Math.min(highest(i), max);
+			}
+			return max;
+		}
+	}
+}
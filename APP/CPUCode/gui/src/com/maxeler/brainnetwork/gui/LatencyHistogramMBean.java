@@ -0,0 +1,25 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+package com.maxeler.brainnetwork.gui;
+
+//Management interface of a stage timer, all the times are in microseconds since the start (or the last reset)
+public interface LatencyHistogramMBean {
+
+	public long getCount();
+	public double getMean();
+	public double getMax();
+	public double getP50();
+	public double getP90();
+	public double getP99();
+	public double getP999();
+
+	//Forget the recorded values
+	public void reset();
+}
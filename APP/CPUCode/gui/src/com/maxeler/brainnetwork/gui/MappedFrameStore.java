@@ -0,0 +1,115 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+
+package com.maxeler.brainnetwork.gui;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+//Frames stored in a flat binary file, mapped in memory and paged in by the OS only when read
+//Layout: header (magic, version, width, height, frames) followed by the frames one after the other
+public class MappedFrameStore extends FrameSource {
+
+	//File header, little endian
+	public static final int magic = 0x53464e42;
+	public static final int version = 1;
+	public static final int header_size = 32;
+
+	//Check whether a file is a frame store
+	public static boolean isFrameStore(String file_name){
+
+		try {
+			RandomAccessFile file = new RandomAccessFile(file_name, "r");
+			try {
+				return file.length()>=header_size && Integer.reverseBytes(file.readInt())==magic;
+			} finally {
+				file.close();
+			}
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	//Read the header of a frame store
+	private static int [] readHeader(FileChannel channel) throws IOException{
+
+		ByteBuffer header = ByteBuffer.allocate(header_size).order(ByteOrder.LITTLE_ENDIAN);
+		while (header.hasRemaining())
+			if (channel.read(header, header.position())<0)
+				throw new IOException("Truncated frame store header");
+		header.flip();
+		if (header.getInt()!=magic || header.getInt()!=version)
+			throw new IOException("Not a frame store (version "+version+")");
+		return new int [] {header.getInt(), header.getInt(), header.getInt()};
+	}
+
+	//Bytes of one frame
+	private final int frame_size;
+
+	//Mapped regions, each holding a whole number of frames (a single mapping is limited to 2GB)
+	private final MappedByteBuffer [] chunks;
+	private final int frames_per_chunk;
+
+	//Constructor
+	private MappedFrameStore(FileChannel channel, int [] header) throws IOException{
+
+		//Measure the sequence
+		super(header[0], header[1], header[2]);
+		frame_size = width*height;
+
+		//Map the file lazily, nothing is read until accessed
+		frames_per_chunk = Math.max(1, Integer.MAX_VALUE/frame_size);
+		chunks = new MappedByteBuffer [(frames+frames_per_chunk-1)/frames_per_chunk];
+		for (int c=0; c<chunks.length; ++c){
+			long offset = header_size + (long)c*frames_per_chunk*frame_size;
+			long length = (long)Math.min(frames_per_chunk, frames-c*frames_per_chunk)*frame_size;
+			chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+		}
+	}
+
+	//Open a frame store (the mapping stays valid after the file is closed)
+	public static MappedFrameStore open(String file_name) throws IOException{
+
+		RandomAccessFile file = new RandomAccessFile(file_name, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			return new MappedFrameStore(channel, readHeader(channel));
+		} finally {
+			file.close();
+		}
+	}
+
+	@Override
+	public void readFrame(int frame, int [] values){
+		MappedByteBuffer chunk = chunks[frame/frames_per_chunk];
+		int base = (frame%frames_per_chunk)*frame_size;
+		for (int p=0; p<values.length; ++p)
+			values[p] = chunk.get(base+p) & 0xff;
+	}
+
+	@Override
+	public void readFrame(int frame, byte [] values){
+		ByteBuffer chunk = chunks[frame/frames_per_chunk].duplicate();
+		chunk.position((frame%frames_per_chunk)*frame_size);
+		chunk.get(values, 0, values.length);
+	}
+
+	@Override
+	public void readWindow(int pixel, int frame, int window, byte [] series, int offset){
+		for (int i=0; i<window; ++i){
+			int f = wrap(frame-window+1+i);
+			series[offset+i] = chunks[f/frames_per_chunk].get((f%frames_per_chunk)*frame_size+pixel);
+		}
+	}
+}
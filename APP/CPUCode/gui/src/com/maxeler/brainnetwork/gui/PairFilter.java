@@ -0,0 +1,133 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+
+package com.maxeler.brainnetwork.gui;
+
+import java.awt.image.BufferedImage;
+import java.util.BitSet;
+
+//Pairs of points worth correlating: both ends inside the region of interest (rectangles and masks, the whole image if none),
+//optionally one end in each of two regions (for example the left and the right half), and at least a minimum distance apart
+public class PairFilter {
+
+	//Size of the images, point identifiers are y*width+x
+	private final int width;
+	private final int height;
+
+	//Pixels of the region of interest, null for the whole image
+	private BitSet region = null;
+
+	//One end in each half of the image
+	private boolean left_right = false;
+
+	//One end in each of two regions, null if not restricted
+	private BitSet first_region = null;
+	private BitSet second_region = null;
+
+	//Minimum distance between the ends in pixels
+	private double min_distance = 0;
+
+	//Constructor, every pair passes
+	public PairFilter(int width, int height){
+
+		this.width = width;
+		this.height = height;
+	}
+
+	public int getWidth(){
+		return width;
+	}
+	public int getHeight(){
+		return height;
+	}
+
+	//Add a rectangle to the region of interest (clipped to the image)
+	public void addRectangle(int x, int y, int w, int h){
+
+		if (region==null)
+			region = new BitSet(width*height);
+		for (int row=Math.max(0,y); row<Math.min(height,y+h); ++row)
+			region.set(row*width+Math.max(0,x), row*width+Math.min(width,x+w));
+	}
+
+	//Add the pixels of a mask that are not black to the region of interest
+	public void addMask(BufferedImage mask){
+
+		if (mask.getWidth()!=width || mask.getHeight()!=height)
+			throw new IllegalArgumentException("Mask is "+mask.getWidth()+"x"+mask.getHeight()+", images are "+width+"x"+height);
+		if (region==null)
+			region = new BitSet(width*height);
+		for (int y=0; y<height; ++y)
+			for (int x=0; x<width; ++x)
+				if ((mask.getRGB(x,y) & 0xffffff)!=0)
+					region.set(y*width+x);
+	}
+
+	//Keep only the pairs between the left and the right half of the image (for example between hemispheres)
+	public void setLeftRight(boolean left_right){
+		this.left_right = left_right;
+	}
+
+	//Keep only the pairs with one end in each region (null for anywhere)
+	public void setRegions(BitSet first_region, BitSet second_region){
+		this.first_region = first_region;
+		this.second_region = second_region;
+	}
+
+	//Keep only the pairs at least this distance apart
+	public void setMinDistance(double min_distance){
+		this.min_distance = min_distance;
+	}
+	public double getMinDistance(){
+		return min_distance;
+	}
+
+	//Whether every pair passes
+	public boolean isEmpty(){
+		return region==null && !left_right && first_region==null && second_region==null && min_distance<=0;
+	}
+
+	//Whether the point can be the first end of a pair (the left one when split)
+	public boolean first(int id){
+		return (region==null || region.get(id)) && (!left_right || id%width<width/2) && (first_region==null || first_region.get(id));
+	}
+
+	//Whether the point can be the second end of a pair (the right one when split)
+	public boolean second(int id){
+		return (region==null || region.get(id)) && (!left_right || id%width>=width/2) && (second_region==null || second_region.get(id));
+	}
+
+	//Whether the pair passes, in either order
+	public boolean accept(int a, int b){
+
+		if (!((first(a) && second(b)) || (first(b) && second(a))))
+			return false;
+		if (min_distance<=0)
+			return true;
+		long dx = a%width - b%width;
+		long dy = a/width - b/width;
+		return dx*dx+dy*dy >= min_distance*min_distance;
+	}
+
+	//Remove the edges that do not pass, keeping the order of the others
+	public void retain(EdgeBuffer edges){
+
+		int kept = 0;
+		for (int i=0; i<edges.size; ++i)
+			if (accept(edges.point_a[i], edges.point_b[i])){
+				edges.point_a[kept] = edges.point_a[i];
+				edges.point_b[kept] = edges.point_b[i];
+				edges.correlation[kept] = edges.correlation[i];
+				++kept;
+			}
+		edges.size = kept;
+		edges.heapify();
+	}
+}
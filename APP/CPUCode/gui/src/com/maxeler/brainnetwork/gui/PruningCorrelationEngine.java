@@ -0,0 +1,234 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+
+package com.maxeler.brainnetwork.gui;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+//Linear correlation skipping the pairs that provably cannot reach the threshold, with the same results of the java engine
+//Each z-scored series u = x/(sqrt(window)*sd) is projected on the Haar basis up to the third level, that is on the series
+//constant over 8 segments: the correlation is <u_a,u_b> - c_a*c_b with c = average/sd, so by Cauchy-Schwarz on the residuals
+//|correlation| <= |<proj_a,proj_b> - c_a*c_b| + |res_a|*|res_b|, plus a bound on the float rounding of the exact formula
+//The pairs passing the test are correlated from their integer dot product, exactly like the other java engines
+public class PruningCorrelationEngine extends JavaCorrelationEngine {
+
+	//Segments of the projection (Haar levels 0 to 3)
+	private static final int max_segments = 8;
+
+	//Bound on the rounding of the float formula: 3 roundings of values up to 255*255 (unit roundoff 2^-24), with some margin
+	private static final double rounding = 4*255*255/(double)(1<<24);
+
+	//Margin on the double arithmetic of the bound itself
+	private static final double margin = 1e-6;
+
+	//Segments in use, at most one per sample
+	private int segments = max_segments;
+
+	//Per point: projection on the orthonormal segment indicators (segment l of point i at [l*stride+i]), average/sd, norm of the residual, 1/sd
+	private double [] projection = new double [0];
+	private int stride = 0;
+	private double [] center = new double [0];
+	private double [] residual = new double [0];
+	private double [] inverse_sd = new double [0];
+
+	//Pairs examined and pairs skipped, since the engine was created
+	private final AtomicLong pairs = new AtomicLong();
+	private final AtomicLong pruned = new AtomicLong();
+
+	//Bounds of the current row and columns passing the test, for each worker thread
+	private final ThreadLocal<double []> bounds = new ThreadLocal<double []>(){
+		@Override
+		protected double [] initialValue(){
+			return new double [0];
+		}
+	};
+	private final ThreadLocal<int []> survivors = new ThreadLocal<int []>(){
+		@Override
+		protected int [] initialValue(){
+			return new int [0];
+		}
+	};
+
+	//Constructor
+	public PruningCorrelationEngine(int threads, boolean vector){
+		super(threads, vector);
+	}
+
+	//Vectorized if possible
+	public PruningCorrelationEngine(int threads){
+		this(threads, true);
+	}
+
+	//Use all the available cores
+	public PruningCorrelationEngine(){
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	//Pairs examined since the engine was created
+	public long getPairs(){
+		return pairs.get();
+	}
+
+	//Pairs skipped without computing their correlation
+	public long getPrunedPairs(){
+		return pruned.get();
+	}
+
+	//Fraction of the pairs skipped
+	public double getPruningRate(){
+		long examined = pairs.get();
+		return examined==0 ? 0 : pruned.get()/(double)examined;
+	}
+
+	//Project every series once, before the tiles are computed
+	@Override
+	protected void prepare(){
+
+		int window = p.window;
+		segments = Math.min(max_segments, window);
+		if (center.length<p.size){
+			center = new double [p.size];
+			residual = new double [p.size];
+			inverse_sd = new double [p.size];
+		}
+		stride = center.length;
+		if (projection.length<stride*segments)
+			projection = new double [stride*segments];
+
+		for (int i=0; i<p.size; ++i){
+
+			//Constant series are never skipped (the bound is infinite)
+			double sd = p.standard_deviation[i];
+			if (!(sd>0)){
+				for (int l=0; l<segments; ++l)
+					projection[l*stride+i] = 0;
+				center[i] = 0;
+				residual[i] = 0;
+				inverse_sd[i] = Double.POSITIVE_INFINITY;
+				continue;
+			}
+
+			//Mean of each segment gives the projection, the deviations from it the residual
+			double scale = 1/(Math.sqrt(window)*sd);
+			double squares = 0;
+			int offset = i*window;
+			for (int l=0; l<segments; ++l){
+				int start = l*window/segments;
+				int end = (l+1)*window/segments;
+				double sum = 0;
+				for (int k=start; k<end; ++k)
+					sum += p.series[offset+k] & 0xff;
+				double mean = sum/(end-start);
+				for (int k=start; k<end; ++k){
+					double deviation = (p.series[offset+k] & 0xff) - mean;
+					squares += deviation*deviation;
+				}
+				projection[l*stride+i] = sum/Math.sqrt(end-start)*scale;
+			}
+			center[i] = p.average[i]/sd;
+			residual[i] = Math.sqrt(squares)*scale;
+			inverse_sd[i] = 1/sd;
+		}
+	}
+
+	//Upper bound on |correlation(a,b)| as computed in float, for the columns [first,last), in bound[j-first]
+	//One pass per segment over consecutive columns, so that the loops are vectorized by the JIT
+	private void bound(int a, int first, int last, double [] bound){
+
+		int columns = last-first;
+		double center_a = center[a];
+		for (int j=0; j<columns; ++j)
+			bound[j] = -center_a*center[first+j];
+		for (int l=0; l<segments; ++l){
+			double projection_a = projection[l*stride+a];
+			for (int j=0, offset=l*stride+first; j<columns; ++j)
+				bound[j] += projection_a*projection[offset+j];
+		}
+		double residual_a = residual[a];
+		double inverse_sd_a = inverse_sd[a];
+		for (int j=0; j<columns; ++j){
+			double b = Math.abs(bound[j]) + residual_a*residual[first+j];
+			bound[j] = b + rounding*inverse_sd_a*inverse_sd[first+j] + margin*(1+b);
+		}
+	}
+
+	//Integer dot product of two series
+	private static int dot(ActivePoints p, int a, int b){
+
+		int window = p.window;
+		int offset_a = a*window;
+		int offset_b = b*window;
+		int sum = 0;
+		for (int k=0; k<window; ++k)
+			sum += (p.series[offset_a+k] & 0xff) * (p.series[offset_b+k] & 0xff);
+		return sum;
+	}
+
+	//Test every pair of the tile, then correlate the survivors of each row with the vector kernel if many, one by one otherwise
+	@Override
+	protected void correlateTile(int first_row, int last_row, int first_column, int last_column, EdgeBuffer found){
+
+		int [] columns = survivors.get();
+		double [] bound = bounds.get();
+		if (columns.length<last_column-first_column){
+			columns = new int [last_column-first_column];
+			bound = new double [last_column-first_column];
+			survivors.set(columns);
+			bounds.set(bound);
+		}
+		DotProductKernel kernel = kernels.get();
+		boolean vector = !(kernel instanceof DotProductKernel.Scalar);
+		boolean loaded = false;
+		long examined = 0, skipped = 0;
+
+		for (int i=first_row; i<last_row; ++i){
+
+			//Bound every pair of the row
+			int start = Math.max(first_column, i+1);
+			if (start>=last_column)
+				continue;
+			bound(i, start, last_column, bound);
+			int count = 0;
+			for (int j=start; j<last_column; ++j)
+				if (!(bound[j-start]<threshold))
+					columns[count++] = j;
+			examined += last_column-start;
+			skipped += last_column-start-count;
+			if (count==0)
+				continue;
+
+			//Correlate the remaining pairs
+			if (vector && 4*count>=last_column-start){
+				if (!loaded){
+					kernel.setColumns(p.series, p.window, first_column, last_column);
+					loaded = true;
+				}
+				int [] dot = kernel.dot(i);
+				for (int n=0; n<count; ++n){
+					int j = columns[n];
+					float correlation = correlation(p,i,j,dot[j-first_column]);
+					if (correlation>=threshold || correlation<=(-threshold))
+						found.add(p.point[i], p.point[j], correlation);
+				}
+			} else {
+				for (int n=0; n<count; ++n){
+					int j = columns[n];
+					float correlation = correlation(p,i,j,dot(p,i,j));
+					if (correlation>=threshold || correlation<=(-threshold))
+						found.add(p.point[i], p.point[j], correlation);
+				}
+			}
+		}
+
+		//One update of the counters per tile
+		pairs.addAndGet(examined);
+		pruned.addAndGet(skipped);
+	}
+}
@@ -0,0 +1,75 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+
+package com.maxeler.brainnetwork.gui;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.JComboBox;
+
+//Combo box to choose the playback rate or the analysis rate of the pipeline
+
+public class RateComboBox extends JComboBox<String> implements ActionListener{
+
+	//UID generated for component serialization
+	private static final long serialVersionUID = 2301771518562207344L;
+
+	//Choices of playback rate (frames per second)
+	private static final String [] playback_labels = {"5 fps", "10 fps", "25 fps", "50 fps"};
+	private static final double [] playback_rates = {5, 10, 25, 50};
+
+	//Choices of analysis rate (computations per second)
+	private static final String [] analysis_labels = {"0.5 Hz", "1 Hz", "2 Hz", "5 Hz", "Max"};
+	private static final double [] analysis_rates = {0.5, 1, 2, 5, ComputationTrigger.as_fast_as_possible};
+
+	//Reference to the pipeline
+	private ComputationTrigger trigger = null;
+
+	//Control the analysis rate, otherwise the playback rate
+	private boolean analysis = false;
+	private double [] rates = null;
+
+	//Constructor
+	public RateComboBox(ComputationTrigger trigger, boolean analysis){
+
+		//Instantiate a combo box with the choices of the controlled rate
+		super(analysis ? analysis_labels : playback_labels);
+
+		//Store external references
+		this.trigger = trigger;
+		this.analysis = analysis;
+		this.rates = analysis ? analysis_rates : playback_rates;
+
+		//Select the current rate of the pipeline
+		double current = analysis ? trigger.getAnalysisRate() : trigger.getPlaybackRate();
+		for (int i=0; i<rates.length; ++i)
+			if (rates[i]==current)
+				setSelectedIndex(i);
+
+		//Combo size
+		setSize(80,20);
+
+		//In order to react to action on the combo box
+		addActionListener(this);
+	}
+
+	//Describe reaction
+	@Override
+	public void actionPerformed(ActionEvent e){
+
+		//Change the rate of the pipeline, the new period starts immediately
+		double rate = rates[getSelectedIndex()];
+		if (analysis)
+			trigger.setAnalysisRate(rate);
+		else
+			trigger.setPlaybackRate(rate);
+	}
+}
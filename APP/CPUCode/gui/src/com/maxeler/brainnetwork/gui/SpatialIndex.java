@@ -0,0 +1,169 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+
+package com.maxeler.brainnetwork.gui;
+
+import java.util.Arrays;
+
+//Grid of square cells over the image: the active points are copied in an order where the points of each cell are
+//contiguous, then a pair filter selects the blocks of pairs (cell by cell) that can contain accepted pairs
+public class SpatialIndex {
+
+	//Default side of a cell in pixels
+	public static final int default_cell_size = 32;
+
+	//Side of a cell and size of the grid
+	private int cell_size = 0;
+	private int columns = 0;
+	private int rows = 0;
+
+	//Non-empty cells in ascending order, points of cells[c] in [start[c],start[c+1])
+	private int cell_count = 0;
+	private int [] cells = new int [0];
+	private int [] start = new int [1];
+
+	//Whether each non-empty cell has points that can be the first or the second end of a pair
+	private boolean [] has_first = new boolean [0];
+	private boolean [] has_second = new boolean [0];
+
+	//Blocks of pairs, block b is rows [block[4b],block[4b+1]) by columns [block[4b+2],block[4b+3])
+	private int block_count = 0;
+	private int [] block = new int [0];
+
+	//Cell of each point and points per cell while reordering, and points reordered by the last build
+	private int [] cell_of = new int [0];
+	private int [] count = new int [0];
+	private ActivePoints ordered = null;
+
+	//Constructor
+	public SpatialIndex(int cell_size){
+		this.cell_size = cell_size;
+	}
+
+	public SpatialIndex(){
+		this(default_cell_size);
+	}
+
+	//Number of blocks of pairs found by the last build
+	public int getBlockCount(){
+		return block_count;
+	}
+
+	//Range of a block: 0 first row, 1 last row, 2 first column, 3 last column
+	public int getBlock(int b, int k){
+		return block[4*b+k];
+	}
+
+	//Copy the points that are in some pair of the filter, ordered by cell (counting sort), and find the blocks of pairs
+	//Return the copy, owned by the index and overwritten by the next build, the points given are not modified
+	public ActivePoints build(ActivePoints points, PairFilter filter){
+
+		int width = filter.getWidth();
+		columns = (width+cell_size-1)/cell_size;
+		rows = (filter.getHeight()+cell_size-1)/cell_size;
+		if (count.length<columns*rows+1)
+			count = new int [columns*rows+1];
+		Arrays.fill(count, 0, columns*rows+1, 0);
+
+		//Cell of each point, -1 if it is in no pair
+		if (cell_of.length<points.size)
+			cell_of = new int [points.size];
+		int kept = 0;
+		for (int i=0; i<points.size; ++i){
+			int id = points.point[i];
+			if (filter.first(id) || filter.second(id)){
+				int cell = (id/width/cell_size)*columns + (id%width)/cell_size;
+				cell_of[i] = cell;
+				++count[cell+1];
+				++kept;
+			} else
+				cell_of[i] = -1;
+		}
+		for (int c=0; c<columns*rows; ++c)
+			count[c+1] += count[c];
+
+		//Copy the points to their position
+		if (ordered==null || ordered.window!=points.window)
+			ordered = new ActivePoints(points.window, kept);
+		ordered.ensureCapacity(kept);
+		ordered.frame = points.frame;
+		ordered.sequence = points.sequence;
+		int window = points.window;
+		for (int i=0; i<points.size; ++i){
+			if (cell_of[i]<0)
+				continue;
+			int k = count[cell_of[i]]++;
+			ordered.point[k] = points.point[i];
+			ordered.average[k] = points.average[i];
+			ordered.standard_deviation[k] = points.standard_deviation[i];
+			System.arraycopy(points.series, i*window, ordered.series, k*window, window);
+		}
+		ordered.size = kept;
+		points = ordered;
+
+		//Non-empty cells, count[c] is now the end of cell c
+		if (cells.length<columns*rows){
+			cells = new int [columns*rows];
+			start = new int [columns*rows+1];
+			has_first = new boolean [columns*rows];
+			has_second = new boolean [columns*rows];
+		}
+		cell_count = 0;
+		for (int c=0, begin=0; c<columns*rows; begin=count[c], ++c){
+			if (count[c]==begin)
+				continue;
+			cells[cell_count] = c;
+			start[cell_count] = begin;
+			has_first[cell_count] = false;
+			has_second[cell_count] = false;
+			for (int i=begin; i<count[c]; ++i){
+				has_first[cell_count] |= filter.first(points.point[i]);
+				has_second[cell_count] |= filter.second(points.point[i]);
+			}
+			++cell_count;
+		}
+		start[cell_count] = kept;
+
+		findBlocks(filter);
+		return ordered;
+	}
+
+	//Keep the pairs of cells (c<=d) holding both ends of some pair and far enough apart in the best case
+	//The pairs of a block are those (i,j) with j>i, so a block starting on the diagonal covers the triangle of its first cell
+	private void findBlocks(PairFilter filter){
+
+		double min_distance = filter.getMinDistance();
+		block_count = 0;
+		for (int c=0; c<cell_count; ++c)
+			for (int d=c; d<cell_count; ++d){
+				if (!((has_first[c] && has_second[d]) || (has_first[d] && has_second[c])))
+					continue;
+				if (min_distance>0){
+					long dx = (Math.abs(cells[c]%columns - cells[d]%columns)+1)*(long)cell_size - 1;
+					long dy = (Math.abs(cells[c]/columns - cells[d]/columns)+1)*(long)cell_size - 1;
+					if (dx*dx+dy*dy < min_distance*min_distance)
+						continue;
+				}
+
+				//Extend the previous block of the same row of cells when the columns follow
+				if (block_count>0 && block[4*block_count-4]==start[c] && block[4*block_count-1]==start[d]){
+					block[4*block_count-1] = start[d+1];
+					continue;
+				}
+				if (block.length<4*(block_count+1))
+					block = Arrays.copyOf(block, Math.max(64, 2*block.length));
+				block[4*block_count] = start[c];
+				block[4*block_count+1] = start[c+1];
+				block[4*block_count+2] = start[d];
+				block[4*block_count+3] = start[d+1];
+				++block_count;
+			}
+	}
+}
@@ -7,32 +7,53 @@
  * GUI code source file                                              *
  *                                                                   *
  *********************************************************************/
-
 package com.maxeler.brainnetwork.gui;
 
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 
+//Speed-up of the denominator kernel over the numerator one, only from computations of the same window
+//Shows the rolling mean of the kernel-only and of the end-to-end ratio (points selection, transfer and decoding included)
 public class SpeedUpTextField extends JTextField{
 
 	//UID generated for component serialization
 	private static final long serialVersionUID = 8425222564625929169L;
 
-	//Variable to calculate speed-up
-	private double numerator = 1;
-	private double denominator = 1;
+	//Number of matched windows in the rolling statistics
+	private static final int history = 64;
+
+	//Windows computed by only one of the two kernels so far (the oldest are forgotten)
+	private static final int max_pending = 16;
+
+	//Times of one kernel for one window
+	private static class Sample{
+		boolean numerator;
+		double time;
+		double total;
+	}
+	private final Map<Long, Sample> pending = new LinkedHashMap<Long, Sample>();
 
-	//Reset variable
-	private boolean numerator_reset = true;
-	private boolean denominator_reset = true;
+	//Last ratios, circular
+	private final double [] kernel_ratio = new double [history];
+	private final double [] total_ratio = new double [history];
+	private int count = 0;
+
+	//Explanation shown before the first matched window
+	private static final String description = "Kernel-only / end-to-end speed-up, mean over the last windows computed by both kernels";
 
 	//Constructor
 	public SpeedUpTextField (){
 
 		//Instantiate a text field
-		super("0.000x");
+		super("0.0x / 0.0x");
 
 		//Text size
-		setSize(80,18);
+		setSize(90,18);
 
 		//Right alignment
 		setHorizontalAlignment(JTextField.RIGHT);
@@ -40,64 +61,85 @@ public class SpeedUpTextField extends JTextField{
 		//Disable editing
 		setEditable(false);
 
+		setToolTipText(description);
 	}
 
-	//Change numerator
-	public void setNumerator(double time){
-
-		//Update private variable
-
-		if (numerator_reset){
-			numerator = time;
-			numerator_reset = false;
+	//Add the kernel time and the host-inclusive total time of one kernel for one window
+	public synchronized void addTime(boolean numerator, long window, double time, double total){
+
+		//Wait for the other kernel to compute the same window
+		Sample other = pending.get(window);
+		if (other==null || other.numerator==numerator){
+			Sample sample = new Sample();
+			sample.numerator = numerator;
+			sample.time = time;
+			sample.total = total;
+			pending.put(window, sample);
+			if (pending.size()>max_pending){
+				Iterator<Long> oldest = pending.keySet().iterator();
+				oldest.next();
+				oldest.remove();
+			}
+			return;
 		}
+		pending.remove(window);
 
-		//When both have been update
-		if (!numerator_reset && !denominator_reset){
-
-			//Reset variable
-			numerator_reset = true;
-			denominator_reset = true;
+		//Both available, add the ratios
+		double numerator_time = numerator ? time : other.time;
+		double numerator_total = numerator ? total : other.total;
+		double denominator_time = numerator ? other.time : time;
+		double denominator_total = numerator ? other.total : total;
+		kernel_ratio[count%history] = numerator_time/denominator_time;
+		total_ratio[count%history] = numerator_total/denominator_total;
+		++count;
 
-			//Update text field
-			setText(String.format("%.3fx",numerator/denominator));
-		}
+		//Update text field
+		int n = Math.min(count, history);
+		double [] kernel_sorted = Arrays.copyOf(kernel_ratio, n);
+		double [] total_sorted = Arrays.copyOf(total_ratio, n);
+		Arrays.sort(kernel_sorted);
+		Arrays.sort(total_sorted);
+		display(String.format("%.1fx / %.1fx", mean(kernel_sorted), mean(total_sorted)), String.format("<html>Speed-up over the last %d windows computed by both kernels<br>"
+				+ "Kernel only: mean %.2fx, p10 %.2fx, median %.2fx, p90 %.2fx<br>"
+				+ "End-to-end (points selection, transfer and decoding included): mean %.2fx, p10 %.2fx, median %.2fx, p90 %.2fx</html>",
+				n, mean(kernel_sorted), percentile(kernel_sorted, 10), percentile(kernel_sorted, 50), percentile(kernel_sorted, 90),
+				mean(total_sorted), percentile(total_sorted, 10), percentile(total_sorted, 50), percentile(total_sorted, 90)));
 	}
 
-	//Change denominator
-	public void setDenominator(double time){
+	//Show a text and a tooltip from the event thread (the times are added by the computing threads), in order of call
+	private void display(final String text, final String tooltip){
 
-		//Update private variable
-		if (denominator_reset){
-			denominator_reset = false;
-			denominator = time;
-		}
+		SwingUtilities.invokeLater(new Runnable(){
+			@Override
+			public void run(){
+				setText(text);
+				setToolTipText(tooltip);
+			}
+		});
+	}
 
-		//When both have been update
-		if (!numerator_reset && !denominator_reset){
+	private static double mean(double [] values){
 
-			//Reset variable
-			numerator_reset = true;
-			denominator_reset = true;
+		double sum = 0;
+		for (double value : values)
+			sum += value;
+		return sum/values.length;
+	}
 
-			//Update text field
-			setText(String.format("%.3fx",numerator/denominator));
-		}
+	//Nearest-rank percentile of sorted values
+	private static double percentile(double [] sorted, double percentage){
+		return sorted[Math.max(0, (int)Math.ceil(percentage/100*sorted.length)-1)];
 	}
 
 	//Reset speed-up to zero
-	public void resetToZero(){
+	public synchronized void resetToZero(){
 
-		//Update private variables
-		numerator = 1;
-		denominator = 1;
+		//Forget all the samples
+		pending.clear();
+		count = 0;
 
-		//Reset variable
-		numerator_reset = true;
-		denominator_reset = true;
-
-		//Update text field
-		setText(String.format("0.000x"));
+		//Update text field, after the updates already queued
+		display("0.0x / 0.0x", description);
 	}
 
 }
@@ -0,0 +1,122 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+package com.maxeler.brainnetwork.gui;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+//Latency histograms of the stages of one kernel, from the extraction of the points to the repaint of the edges
+//Each stage is registered in JMX as com.maxeler.brainnetwork:type=Stage,kernel=<kernel>,name=<stage>
+public class StageTimers {
+
+	//Names of the stages
+	public static final String extract = "extract";
+	public static final String queue = "queue";
+	public static final String correlate = "correlate";
+	public static final String encode = "encode";
+	public static final String transfer = "transfer";
+	public static final String decode = "decode";
+	public static final String kernel = "kernel";
+	public static final String paint = "paint";
+	public static final String end_to_end = "end_to_end";
+
+	//All the timers created, for the periodic log
+	private static final List<StageTimers> all = new CopyOnWriteArrayList<StageTimers>();
+
+	//Name of the kernel and its stages, in creation order
+	private final String name;
+	private final Map<String, LatencyHistogram> stages = new LinkedHashMap<String, LatencyHistogram>();
+
+	//Snapshots at the last log line, to show the statistics of the last interval only
+	private final Map<String, LatencyHistogram.Snapshot> logged = new LinkedHashMap<String, LatencyHistogram.Snapshot>();
+
+	//Constructor
+	public StageTimers(String name){
+
+		this.name = name;
+		all.add(this);
+	}
+
+	public String getName(){
+		return name;
+	}
+
+	//Histogram of a stage, created and registered in JMX on first use
+	public synchronized LatencyHistogram stage(String stage){
+
+		LatencyHistogram histogram = stages.get(stage);
+		if (histogram==null){
+			histogram = new LatencyHistogram();
+			stages.put(stage, histogram);
+			register(stage, histogram);
+		}
+		return histogram;
+	}
+
+	//Expose a histogram through the platform MBean server (monitoring is optional, failures are ignored)
+	private void register(String stage, LatencyHistogram histogram){
+
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName object = new ObjectName("com.maxeler.brainnetwork:type=Stage,kernel="+name+",name="+stage);
+			if (!server.isRegistered(object))
+				server.registerMBean(histogram, object);
+		} catch (Exception e){
+			System.err.println("Unable to register stage "+name+"/"+stage+" in JMX: "+e.getMessage());
+		}
+	}
+
+	//One line with count, median, 99th percentile and maximum of each stage over the last interval
+	public synchronized String intervalLine(){
+
+		StringBuilder line = new StringBuilder(name).append(':');
+		for (Map.Entry<String, LatencyHistogram> entry : stages.entrySet()){
+			LatencyHistogram.Snapshot current = entry.getValue().snapshot();
+			LatencyHistogram.Snapshot previous = logged.put(entry.getKey(), current);
+			LatencyHistogram.Snapshot interval = previous==null ? current : current.since(previous);
+			if (interval.getCount()==0)
+				continue;
+			line.append(String.format(" %s n=%d p50=%.3fms p99=%.3fms max=%.3fms;", entry.getKey(), interval.getCount(),
+					interval.percentile(50)/1e6, interval.percentile(99)/1e6, interval.max()/1e6));
+		}
+		return line.toString();
+	}
+
+	//Print one line per kernel with the given period, on a daemon thread
+	public static void startLogging(long period, TimeUnit unit){
+
+		ScheduledExecutorService logger = Executors.newSingleThreadScheduledExecutor(new ThreadFactory(){
+			@Override
+			public Thread newThread(Runnable r){
+				Thread t = new Thread(r, "stage-timers");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		logger.scheduleAtFixedRate(new Runnable(){
+			@Override
+			public void run(){
+				for (StageTimers timers : new ArrayList<StageTimers>(all))
+					System.out.println(timers.intervalLine());
+			}
+		}, period, period, unit);
+	}
+}
@@ -11,6 +11,7 @@
 package com.maxeler.brainnetwork.gui;
 
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 
 public class TimeTextField extends JTextField{
 
@@ -46,21 +47,23 @@ public class TimeTextField extends JTextField{
 	    setEditable(false);
 	}
 
-	//Change time
-	public void setTime(double time){
+	//Change time: kernel time reported by the engine and total time spent on the host for the given window
+	public void setTime(long window, double time, double total){
 
 		//Update private variable
 		this.time = time;
 
-		//Update text field
-		setText(String.format("%.6fs",time));
+		//Update text field from the event thread (called by the computing threads)
+		final String text = String.format("%.6fs",time);
+		SwingUtilities.invokeLater(new Runnable(){
+			@Override
+			public void run(){
+				setText(text);
+			}
+		});
 
 		//Update speed up field
-		if (numerator)
-			speed_up.setNumerator(time);
-		else
-			speed_up.setDenominator(time);
-
+		speed_up.addTime(numerator, window, time, total);
 	}
 
 }
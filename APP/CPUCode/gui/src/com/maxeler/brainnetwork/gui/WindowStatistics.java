@@ -0,0 +1,115 @@
+/*********************************************************************
+ * Maxeler Technologies: BrainNetwork                                *
+ *                                                                   *
+ * Version: 1.2                                                      *
+ * Date:    05 July 2013                                             *
+ *                                                                   *
+ * GUI code source file                                              *
+ *                                                                   *
+ *********************************************************************/
+
+package com.maxeler.brainnetwork.gui;
+
+//Running sum and sum of squares of each pixel over the sliding window of past frames
+public class WindowStatistics {
+
+	//Reference to the image sequence
+	private FrameSource source = null;
+
+	//Length of the temporal series
+	private int window = 0;
+
+	//Last frame entered in the window
+	private int frame = 0;
+
+	//Number of windows since the creation, identifies the window across kernels even when frames wrap around
+	private long sequence = 0;
+
+	//Per pixel sums (exact, 30 samples of 8 bits fit easily in an integer)
+	private int [] sum = null;
+	private int [] sum_squares = null;
+
+	//Buffers for the pixels entering and leaving the window
+	private int [] entering = null;
+	private int [] leaving = null;
+
+	//Constructor
+	public WindowStatistics(FrameSource source, int window, int frame){
+
+		//Copy references
+		this.source = source;
+		this.window = window;
+
+		//Allocate sums and buffers once
+		int pixels = source.width*source.height;
+		sum = new int [pixels];
+		sum_squares = new int [pixels];
+		entering = new int [pixels];
+		leaving = new int [pixels];
+
+		//Initialize the window
+		reset(frame);
+	}
+
+	//Recompute the sums from scratch for the window ending at the given frame
+	private void reset(int frame){
+
+		this.frame = source.wrap(frame);
+		for (int p=0; p<sum.length; ++p){
+			sum[p] = 0;
+			sum_squares[p] = 0;
+		}
+		for (int i=0; i<window; ++i){
+			source.readFrame(source.wrap(frame-i), entering);
+			for (int p=0; p<sum.length; ++p){
+				int value = entering[p];
+				sum[p] += value;
+				sum_squares[p] += value*value;
+			}
+		}
+	}
+
+	//Slide the window to the given frame: one frame enters and one leaves
+	public synchronized void advance(int frame){
+
+		++sequence;
+
+		//Not the following frame, recompute everything
+		if (frame!=source.wrap(this.frame+1)){
+			reset(frame);
+			return;
+		}
+
+		//Update the sums
+		this.frame = frame;
+		source.readFrame(frame, entering);
+		source.readFrame(source.wrap(frame-window), leaving);
+		for (int p=0; p<sum.length; ++p){
+			int in = entering[p];
+			int out = leaving[p];
+			sum[p] += in - out;
+			sum_squares[p] += in*in - out*out;
+		}
+	}
+
+	//Store the points with standard deviation above threshold (without temporal series) and return the frame they refer to
+	public synchronized int select(float threshold, ActivePoints points){
+
+		points.clear();
+		points.frame = frame;
+		points.sequence = sequence;
+		for (int p=0; p<sum.length; ++p){
+
+			//Variance as (n*sum(x^2)-sum(x)^2)/n^2, exact up to the final division
+			long s = sum[p];
+			long variance = window*(long)sum_squares[p] - s*s;
+			float standard_deviation = (float)Math.sqrt((double)variance/((long)window*window));
+
+			//Keep the point, if necessary
+			if (standard_deviation>=threshold)
+				points.add(p, (float)sum[p]/window, standard_deviation);
+		}
+
+		return frame;
+	}
+}
@@ -21,6 +21,7 @@
 #include <signal.h>
 #include <string.h>
 #include <dlfcn.h>
+#include <poll.h>
 
 #include "slic_private/slic_private_type.h"
 #include "BrainNetwork.h"
@@ -97,7 +98,47 @@ static void check_errors(max_errors_t *errors)
 	}
 }
 
-//Create random data points
+//Commands received in-band on the input pipe (must match the GUI)
+#define COMMAND_COMPUTE  1
+#define COMMAND_SHUTDOWN 2
+#define COMMAND_CANCEL   3
+
+//Set when the GUI asks to shut down while computing
+static int shutdown_requested = 0;
+
+//Command read while computing that the main loop still has to process (0 if none)
+static uint32_t pending_command = 0;
+
+//Check, without blocking, whether the GUI cancelled the current computation
+static int cancel_requested(){
+
+	//A command is already waiting, what follows it in the pipe is its payload
+	if (pending_command)
+		return 0;
+
+	//Nothing to read
+	struct pollfd input = { fileno(input_pipe), POLLIN, 0 };
+	if (poll(&input,1,0)<=0)
+		return 0;
+
+	//Only cancel or shut down are expected while computing
+	uint32_t command = 0;
+	if (fread(&command,sizeof(uint32_t),1,input_pipe)!=1 || command==COMMAND_SHUTDOWN){
+		shutdown_requested = 1;
+		return 1;
+	}
+	if (command==COMMAND_CANCEL)
+		return 1;
+
+	//Any other command is left to the main loop after this computation, which rejects the unknown ones
+	pending_command = command;
+	return 0;
+}
+
+//Bytes of one active point in a request: pixel, average, standard deviation and time series
+#define POINT_BYTES (3*4+window)
+
+//Create random data points, stored as a request frame
 void create_random_points (char * random_file_name, int n){
 
 	//Open a file
@@ -107,6 +148,17 @@ void create_random_points (char * random_file_name, int n){
 		exit(1);
 	}
 
+	//Frame header: compute command, payload length, number of points, a correlation threshold and no limit of edges
+	uint32_t command = COMMAND_COMPUTE;
+	uint32_t length = 3*4 + n*POINT_BYTES;
+	float threshold = 0.5;
+	uint32_t limit = 0;
+	write(random_file,&command,sizeof(uint32_t));
+	write(random_file,&length,sizeof(uint32_t));
+	write(random_file,&n,sizeof(int));
+	write(random_file,&threshold,sizeof(float));
+	write(random_file,&limit,sizeof(uint32_t));
+
 	//Temporary buffer for time series
 	uint8_t * time_series_buffer = malloc(window  * sizeof(uint8_t));
 
@@ -137,70 +189,158 @@ void create_random_points (char * random_file_name, int n){
 		write(random_file,&standard_deviation,sizeof(float));
 
 		//Store time series
-		for (int j=0; j<window; ++j)
-			write(random_file,time_series_buffer+j,sizeof(uint8_t));
+		write(random_file,time_series_buffer,window*sizeof(uint8_t));
 	}
 
-	//Close the file with terminator (point -1) and a correlation threshold
-	int temp =-1;
-	write(random_file,&temp,sizeof(int));
-	float threshold = 0.5;
-	write(random_file,&threshold,sizeof(float));
-
 	//Close the file and deallocate time series buffer
 	close(random_file);
 	free(time_series_buffer);
 }
 
-//Read the list of points from the input pipe
-point_t * read_input_pipe(int * n_points, float * threshold){
+//Payload of the last request, the time series of the points refer to it
+static uint8_t * request_payload = NULL;
 
-	//Pointers to store the list
-	point_t * points_list = NULL;
-	point_t * points_list_tail = NULL;
+//Discard a request that cannot be read, the GUI gets the error and the daemon ends
+static point_t * reject_request(const char * msg){
 
-	//Initialize variable in order to count
-	*n_points = 0;
+	raise_error(msg);
+	free(request_payload);
+	request_payload = NULL;
+	return NULL;
+}
 
-	//Read points until terminator -1
-	int int_buffer;
-	fread(&int_buffer,sizeof(int),1,input_pipe);
-	while(int_buffer!=-1){
+//Read the list of points from the input pipe as a single frame (following a compute command)
+//Frame: payload length, number of points, correlation threshold, maximum number of edges (0 for all),
+//then (pixel, average, standard deviation, time series) per point
+//Return NULL if the pipe is closed or the frame is malformed, nothing else can be read from the pipe then
+point_t * read_input_pipe(int * n_points, float * threshold, uint32_t * limit){
+
+	//Read the payload length, at least the header
+	uint32_t length = 0;
+	if (fread(&length,sizeof(uint32_t),1,input_pipe)!=1)
+		return reject_request("Input pipe closed while reading a request!");
+	if (length<3*4)
+		return reject_request("Request from GUI shorter than its header!");
+
+	//Read the whole payload at once
+	request_payload = malloc(length);
+	if (!request_payload)
+		return reject_request("Unable to allocate the request from GUI!");
+	if (fread(request_payload,sizeof(uint8_t),length,input_pipe)!=length)
+		return reject_request("Input pipe closed while reading a request!");
+
+	//Read number of points, correlation threshold and limit of edges, the points must fill the rest of the payload
+	memcpy(n_points,request_payload,sizeof(int));
+	memcpy(threshold,request_payload+4,sizeof(float));
+	memcpy(limit,request_payload+8,sizeof(uint32_t));
+	if (*n_points<0 || (uint64_t)*n_points*POINT_BYTES!=length-3*4)
+		return reject_request("Request from GUI does not match its number of points!");
+
+	//Points are stored in an array, still linked as a list
+	point_t * points_list = malloc((*n_points>0 ? *n_points : 1) * sizeof(point_t));
+	if (!points_list)
+		return reject_request("Unable to allocate the points of the request from GUI!");
+	uint8_t * record = request_payload + 3*4;
+	for (int i=0; i<*n_points; ++i, record+=POINT_BYTES){
+		memcpy(&points_list[i].pixel,record,sizeof(int));
+		memcpy(&points_list[i].average,record+4,sizeof(float));
+		memcpy(&points_list[i].standard_deviation,record+8,sizeof(float));
+		points_list[i].time_series = record+12;
+		points_list[i].next = (i+1<*n_points) ? &points_list[i+1] : NULL;
+	}
 
-		//Create a new point
-		++(*n_points);
-		point_t * current_point = malloc(sizeof(point_t));
-		current_point->pixel=int_buffer;
+	return points_list;
+}
 
-		//Read average and standard deviation from pipe
-		fread(&current_point->average,sizeof(float),1,input_pipe);
-		fread(&current_point->standard_deviation,sizeof(float),1,input_pipe);
+//Maximum number of edges in a frame, the GUI reads the payload length as a signed 32-bit integer
+#define MAX_FRAME_EDGES ((uint32_t)((INT32_MAX-sizeof(uint32_t)-sizeof(double))/sizeof(edge_t)))
 
-		//Read time series
-		current_point->time_series= malloc(window * sizeof(uint8_t));
-		fread(current_point->time_series,sizeof(uint8_t),window,input_pipe);
+//Write the active edges and the time statistic on the output pipe as a single frame
+//Frame: payload length, number of edges, then (pixel_a, pixel_b, correlation) per edge, then running time
+//The callers keep at most MAX_FRAME_EDGES edges (the strongest ones), so the payload length does not overflow
+void write_output_pipe(edge_t * edges, uint32_t n_edges, double running_time){
 
-		//Add node as list tail from pipe
-		current_point->next = NULL;
-		if(!points_list)
-			points_list=current_point;
-		else
-			points_list_tail->next=current_point;
+	uint32_t length = sizeof(uint32_t) + n_edges*sizeof(edge_t) + sizeof(double);
+	fwrite(&length,sizeof(uint32_t),1,output_pipe);
+	fwrite(&n_edges,sizeof(uint32_t),1,output_pipe);
+	if (n_edges)
+		fwrite(edges,sizeof(edge_t),n_edges,output_pipe);
+	fwrite(&running_time,sizeof(double),1,output_pipe);
+	fflush(output_pipe);
+}
 
-		points_list_tail = current_point;
+//Strength of an edge: the heap of the strongest edges keeps the weakest one at the root
+static float strength(const edge_t * edge){
+	return fabsf(edge->correlation);
+}
 
-		//Read the next point from pipe
-		fread(&int_buffer,sizeof(int),1,input_pipe);
+//Place an edge at position e of a heap of n edges, moving it down to restore the heap
+static void sift_down(edge_t * heap, uint32_t n, uint32_t e, edge_t edge){
+
+	while (1){
+		uint32_t child = 2*e+1;
+		if (child>=n)
+			break;
+		if (child+1<n && strength(&heap[child+1])<strength(&heap[child]))
+			++child;
+		if (strength(&edge)<=strength(&heap[child]))
+			break;
+		heap[e] = heap[child];
+		e = child;
 	}
+	heap[e] = edge;
+}
 
-	//Read correlation threshold from pipe
-	fread(threshold,sizeof(float),1,input_pipe);
+//Offer an edge to a heap of at most limit edges, keeping the strongest ones
+static void offer_edge(edge_t * heap, uint32_t * n, uint32_t limit, edge_t edge){
 
-	return points_list;
+	//Not full, add the edge and move it up
+	if (*n<limit){
+		uint32_t e = (*n)++;
+		while (e>0){
+			uint32_t parent = (e-1)/2;
+			if (strength(&heap[parent])<=strength(&edge))
+				break;
+			heap[e] = heap[parent];
+			e = parent;
+		}
+		heap[e] = edge;
+		return;
+	}
+
+	//Full, replace the weakest edge if stronger
+	if (strength(&edge)>strength(&heap[0]))
+		sift_down(heap, *n, 0, edge);
+}
+
+//Turn an array of edges into a heap of the strongest ones, in place
+static void make_heap(edge_t * edges, uint32_t n_edges){
+
+	uint32_t n = 0;
+	for (uint32_t e=0; e<n_edges; ++e)
+		offer_edge(edges, &n, n_edges, edges[e]);
+}
+
+//Keep only the limit strongest edges of an array, in place (the heap never overtakes the edge being offered)
+static void keep_strongest(edge_t * edges, uint64_t * n_edges, uint32_t limit){
+
+	if (limit==0 || *n_edges<=limit)
+		return;
+	uint32_t n = 0;
+	for (uint64_t e=0; e<*n_edges; ++e)
+		offer_edge(edges, &n, limit, edges[e]);
+	*n_edges = n;
 }
 
-//Calculate linear correlation storing active edges on pipe
-void cpu_calculate_linear_correlation(point_t * points_list, int n_points, float threshold){
+//Calculate linear correlation storing active edges on pipe (only the limit strongest ones, if not 0)
+void cpu_calculate_linear_correlation(point_t * points_list, int n_points, float threshold, uint32_t limit){
+
+	//Active edges, collected before being written as a single frame (a bounded heap if limited)
+	if (limit>MAX_FRAME_EDGES)
+		limit = MAX_FRAME_EDGES;
+	uint32_t n_edges = 0;
+	uint32_t edges_capacity = (limit && limit<1024) ? limit : 1024;
+	edge_t * edges_array = malloc(edges_capacity * sizeof(edge_t));
 
 	//Running time statistics
 	struct timeval tim;
@@ -211,6 +351,10 @@ void cpu_calculate_linear_correlation(point_t * points_list, int n_points, float
 	point_t * temp_point = points_list;
 	for (int i=0; i<n_points-1; ++i, temp_point=temp_point->next){
 
+		//Stop early if the GUI does not need the result anymore (checked every 64 rows)
+		if ((i & 63)==0 && cancel_requested())
+			break;
+
 		//Loop over the remaining points
 		point_t * other_temp_point = temp_point->next;
 		for (int j=i+1; j<n_points; ++j, other_temp_point=other_temp_point->next){
@@ -228,10 +372,30 @@ void cpu_calculate_linear_correlation(point_t * points_list, int n_points, float
 			//Check if active edge
 			if (correlation>=threshold || correlation<=(-threshold)){
 
-				fwrite(&temp_point->pixel,sizeof(int),1,output_pipe);
-				fwrite(&other_temp_point->pixel,sizeof(int),1,output_pipe);
-				fwrite(&correlation,sizeof(float),1,output_pipe);
-				fflush(output_pipe);
+				//A frame is full, keep the strongest edges from now on
+				if (!limit && n_edges==MAX_FRAME_EDGES){
+					limit = MAX_FRAME_EDGES;
+					make_heap(edges_array, n_edges);
+				}
+
+				//Grow the edge array (up to the limit, if any)
+				if (n_edges==edges_capacity && (!limit || n_edges<limit)){
+					edges_capacity *= 2;
+					if (limit && edges_capacity>limit)
+						edges_capacity = limit;
+					edges_array = realloc(edges_array, edges_capacity * sizeof(edge_t));
+				}
+
+				//Keep it only if among the strongest
+				if (limit){
+					edge_t edge = {temp_point->pixel, other_temp_point->pixel, correlation};
+					offer_edge(edges_array, &n_edges, limit, edge);
+					continue;
+				}
+				edges_array[n_edges].pixel_a = temp_point->pixel;
+				edges_array[n_edges].pixel_b = other_temp_point->pixel;
+				edges_array[n_edges].correlation = correlation;
+				++n_edges;
 			}
 		}
 	}
@@ -241,13 +405,10 @@ void cpu_calculate_linear_correlation(point_t * points_list, int n_points, float
 	double stop=tim.tv_sec+(tim.tv_usec/1000000.0);
 	double cpu_time = stop-start;
 
-	//Terminate pipe data with terminator point (0,0) and time statistic
-	int int_buffer=0;
-	fwrite(&int_buffer,sizeof(int),1,output_pipe);
-	fwrite(&int_buffer,sizeof(int),1,output_pipe);
-	fwrite(&cpu_time,sizeof(double),1,output_pipe);
-	fflush(output_pipe);
+	//Send edges and time statistic
+	write_output_pipe(edges_array,n_edges,cpu_time);
 	fprintf(stderr,"completed in %.6lf s\n",cpu_time);
+	free(edges_array);
 }
 
 //Used to write the DFE DRAM memory from host
@@ -353,8 +514,8 @@ int gcd(int a, int b){
 	return gcd(b,a%b);
 }
 
-//Calculate linear correlation storing active edges on pipe
-void dfe_calculate_linear_correlation(max_file_t * maxfile, max_engine_t * device, point_t * points_list, int n_points, float threshold){
+//Calculate linear correlation storing active edges on pipe (only the limit strongest ones, if not 0)
+void dfe_calculate_linear_correlation(max_file_t * maxfile, max_engine_t * device, point_t * points_list, int n_points, float threshold, uint32_t limit){
 
 	max_actions_t *actions = max_actions_init(maxfile, NULL);
 	max_disable_validation(actions);
@@ -435,21 +596,11 @@ void dfe_calculate_linear_correlation(max_file_t * maxfile, max_engine_t * devic
 	stop=tim.tv_sec+(tim.tv_usec/1000000.0);
 	dfe_time += stop-start;
 
-    //Copy the result on the data pipe
-    for (uint64_t i=0; i<n_edges; ++i){
-
-    	fwrite(&(edges_array[i].pixel_a),sizeof(int),1,output_pipe);
-    	fwrite(&(edges_array[i].pixel_b),sizeof(int),1,output_pipe);
-    	fwrite(&(edges_array[i].correlation),sizeof(float),1,output_pipe);
-    	fflush(output_pipe);
-    }
-
-    //Terminate data pipe with terminator point (0,0) and time statistic
-    int int_buffer=0;
-    fwrite(&int_buffer,sizeof(int),1,output_pipe);
-    fwrite(&int_buffer,sizeof(int),1,output_pipe);
-    fwrite(&dfe_time,sizeof(double),1,output_pipe);
-    fflush(output_pipe);
+    //Copy the result on the data pipe with the time statistic, the strongest edges only if limited or beyond a frame
+    if (!limit || limit>MAX_FRAME_EDGES)
+        limit = MAX_FRAME_EDGES;
+    keep_strongest(edges_array, &n_edges, limit);
+    write_output_pipe(edges_array,(uint32_t)n_edges,dfe_time);
     fprintf(stderr,"completed in %.6lf s\n",dfe_time);
 
     //Deallocate points and edges
@@ -458,29 +609,15 @@ void dfe_calculate_linear_correlation(max_file_t * maxfile, max_engine_t * devic
     	free(edges_array);
 }
 
-//Deallocate list from heap memory
+//Deallocate points and request payload from heap memory
 point_t * deallocate_points(point_t * points_list){
 
-	//Remove point one by one
-	while (points_list){
-
-		//Remove head node from list
-		point_t * temp_point = points_list;
-		points_list=points_list->next;
-
-		//Deallocate node memory
-		free(temp_point->time_series);
-		free(temp_point);
-	}
+	free(points_list);
+	free(request_payload);
+	request_payload = NULL;
 	return NULL;
 }
 
-//Redefine SIGUSR1 handle
-void SIGUSR1_handler(int sig_no __attribute__((unused)))
-{
-	//Do nothing instead of a printout
-}
-
 //Silent handler for probing busy devices
 void silent_error_handler(max_engine_t *const device __attribute__((unused)), const char * message __attribute__((unused)), const char * trace __attribute__((unused)))
 {
@@ -589,47 +726,52 @@ int main(int argc, char* argv[])
 	}
 
 	//Use stdin and stdout as communication communication pipes
+	//Input is unbuffered so that polling the descriptor sees every pending command, output frames are flushed as a whole
 	input_pipe = stdin;
 	output_pipe = stdout;
+	setvbuf(input_pipe, NULL, _IONBF, 0);
+	setvbuf(output_pipe, NULL, _IOFBF, 1<<16);
 
 	//Stream the pid within the pipes
 	fwrite(&pid,sizeof(int),1,output_pipe);
 	fflush(output_pipe);
 
-	//Signal SIGUSR1 is used for triggering the computation
-	int signal;
-	sigset_t signal_mask;
-	sigemptyset(&signal_mask);
-	sigaddset(&signal_mask, SIGUSR1);
-
-	//Redefine SIGUSR1 handler
-	struct sigaction sa;
-	memset(&sa, 0, sizeof(sa));
-	sa.sa_handler = &SIGUSR1_handler;
-	sigaction(SIGUSR1, &sa,NULL);
-
 	if (valid_device && pipes && shared_library)
 		flog = fopen("dfe.out", "w");
 
 	//Linear correlation daemon
 	while(1){
 
-		//Wait for starting signal
-		sigwait(&signal_mask, &signal);
+		//Wait for the next command (unless one arrived while computing), stop when the GUI closes the pipe or asks to shut down
+		uint32_t command = pending_command;
+		pending_command = 0;
+		if (shutdown_requested || (!command && fread(&command,sizeof(uint32_t),1,input_pipe)!=1) || command==COMMAND_SHUTDOWN)
+			break;
+
+		//Cancel arrived after the computation had already completed
+		if (command==COMMAND_CANCEL)
+			continue;
+		if (command!=COMMAND_COMPUTE){
+			raise_error("Unknown command from GUI!");
+			break;
+		}
 
 		//Reading from pipe
 		int n_points;
 		float threshold;
+		uint32_t limit;
 		fprintf(stderr,"Reading from pipe... ");
-		point_t * points_list = read_input_pipe(&n_points,&threshold);
+		point_t * points_list = read_input_pipe(&n_points,&threshold,&limit);
+		if (!points_list)
+			break;
 		fprintf(stderr,"completed\n");
 
 		//Computing linear correlation using DFE or CPU
 		fprintf(stderr,"Computing on %d points with correlation %.3lf... ",n_points,threshold);
 		if (valid_device && pipes && shared_library)
-			dfe_calculate_linear_correlation(maxfile,engine,points_list,n_points,threshold);
+			dfe_calculate_linear_correlation(maxfile,engine,points_list,n_points,threshold,limit);
 		else
-			cpu_calculate_linear_correlation(points_list,n_points,threshold);
+			cpu_calculate_linear_correlation(points_list,n_points,threshold,limit);
 
 		//Deallocate memory
 		fprintf(stderr,"Deallocate memory... ");
@@ -638,5 +780,11 @@ int main(int argc, char* argv[])
 		//break;
 	}
 
+	//Release the device and the log before ending
+	if (engine)
+		max_unload(engine);
+	if (flog)
+		fclose(flog);
+
 	return 0;
 }
@@ -7,5 +7,12 @@ fi
 topdir=../..
 
 export LAUNCH_FROM_SCRIPT=1
-java -jar ./gui/brain_network.jar $topdir/data/brain_images.zip $bindir/compute_correlation $bindir/libdfe.so
+
+# Enable the vectorized CPU kernel when the JVM has the (incubating) vector API
+vector=""
+if java --list-modules 2>/dev/null | grep -q jdk.incubator.vector ; then
+	vector="--add-modules jdk.incubator.vector"
+fi
+
+java $vector -jar ./gui/brain_network.jar $topdir/data/brain_images.zip $bindir/compute_correlation $bindir/libdfe.so
 